@@ -1,25 +1,43 @@
 package sbhackathon.koala.happyMSP.build_A.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
 
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig {
 
+    // Build job workers: the backlog lives in the build_job table, so this pool never queues work
     @Bean(name = "buildTaskExecutor")
-    public Executor buildTaskExecutor() {
+    public Executor buildTaskExecutor(@Value("${build.queue.worker-concurrency:2}") int concurrency) {
+        return stageExecutor(concurrency, "Build-");
+    }
+
+    // docker build stage (CPU-bound): shared by all deployments, bounds concurrent image builds
+    @Bean(name = "dockerBuildExecutor")
+    public Executor dockerBuildExecutor(@Value("${build.pipeline.build-concurrency:4}") int concurrency) {
+        return stageExecutor(concurrency, "DockerBuild-");
+    }
+
+    // ECR push stage (network-bound): runs independently so pushes overlap other services' builds
+    @Bean(name = "ecrPushExecutor")
+    public Executor ecrPushExecutor(@Value("${build.pipeline.push-concurrency:4}") int concurrency) {
+        return stageExecutor(concurrency, "EcrPush-");
+    }
+
+    private Executor stageExecutor(int concurrency, String threadNamePrefix) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(5);
-        executor.setQueueCapacity(10);
-        executor.setThreadNamePrefix("Build-");
-        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setThreadNamePrefix(threadNamePrefix);
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,8 @@
+package sbhackathon.koala.happyMSP.build_A.config;
+
+public enum BuildContextSource {
+    // docker build . in the checked-out service directory
+    WORKTREE,
+    // Context tar generated from the commit's Git objects and piped to docker build -, nothing checked out
+    GIT
+}
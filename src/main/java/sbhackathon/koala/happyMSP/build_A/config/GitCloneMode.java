@@ -0,0 +1,8 @@
+package sbhackathon.koala.happyMSP.build_A.config;
+
+public enum GitCloneMode {
+    // Working tree checked out from the persistent bare mirror (full history, incremental fetch)
+    MIRROR,
+    // Depth-1, single-branch clone of the default branch with only services/ materialized
+    SHALLOW
+}
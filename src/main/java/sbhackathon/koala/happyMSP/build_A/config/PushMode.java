@@ -0,0 +1,8 @@
+package sbhackathon.koala.happyMSP.build_A.config;
+
+public enum PushMode {
+    // docker tag + docker login + docker push through the local daemon
+    DOCKER,
+    // docker save, then blobs and an OCI manifest pushed concurrently over the distribution API
+    OCI
+}
@@ -0,0 +1,27 @@
+package sbhackathon.koala.happyMSP.build_A.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildJobDto;
+import sbhackathon.koala.happyMSP.build_A.service.BuildJobQueue;
+
+@Slf4j
+@RestController
+@RequestMapping("/build-jobs")
+@RequiredArgsConstructor
+public class BuildJobController {
+
+    private final BuildJobQueue buildJobQueue;
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<BuildJobDto> getBuildJob(@PathVariable("jobId") long jobId) {
+        return buildJobQueue.getJob(jobId)
+                .map(job -> ResponseEntity.ok(BuildJobDto.from(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,51 @@
+package sbhackathon.koala.happyMSP.build_A.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import sbhackathon.koala.happyMSP.build_A.service.BuildLogService;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+@Slf4j
+@RestController
+@RequestMapping("/build-logs")
+@RequiredArgsConstructor
+public class BuildLogController {
+
+    private final BuildLogService buildLogService;
+
+    @GetMapping(value = "/{buildId}", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<StreamingResponseBody> getBuildLog(@PathVariable("buildId") String buildId) {
+        try {
+            // Running build: only the retained tail is available until the spill file is complete
+            Optional<String> activeTail = buildLogService.getActiveTail(buildId);
+            if (activeTail.isPresent()) {
+                byte[] tail = activeTail.get().getBytes(StandardCharsets.UTF_8);
+                return ResponseEntity.ok(out -> out.write(tail));
+            }
+
+            Optional<InputStream> fullLog = buildLogService.openFullLog(buildId);
+            if (fullLog.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            return ResponseEntity.ok(out -> {
+                try (InputStream in = fullLog.get()) {
+                    in.transferTo(out);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Error reading build log {}: {}", buildId, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
@@ -2,11 +2,14 @@ package sbhackathon.koala.happyMSP.build_A.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import sbhackathon.koala.happyMSP.build_A.dto.GetRepositoryResponseDto;
 import sbhackathon.koala.happyMSP.build_A.dto.PostRepositoryRequestDto;
 import sbhackathon.koala.happyMSP.build_A.dto.PostRepositoryResponseDto;
+import sbhackathon.koala.happyMSP.build_A.dto.PostRepositoryState;
+import sbhackathon.koala.happyMSP.build_A.exception.BuildQueueFullException;
 import sbhackathon.koala.happyMSP.build_A.service.BuildService;
 
 @Slf4j
@@ -44,8 +47,14 @@ public class RepositoryController {
             }
             
             PostRepositoryResponseDto response = buildService.requestDeployment(request);
-            return ResponseEntity.ok(response);
+            if (response.getState() == PostRepositoryState.ALREADY_DEPLOYED) {
+                return ResponseEntity.ok(response);
+            }
+            return ResponseEntity.accepted().body(response);
             
+        } catch (BuildQueueFullException e) {
+            log.warn("Deployment request rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
         } catch (Exception e) {
             log.error("Error processing deployment request: {}", e.getMessage());
             return ResponseEntity.internalServerError().build();
@@ -0,0 +1,8 @@
+package sbhackathon.koala.happyMSP.build_A.dto;
+
+public enum BuildBackend {
+    // docker build with the daemon's local layer cache
+    CLASSIC,
+    // docker buildx build importing/exporting layer cache from a registry cache ref per service
+    BUILDKIT
+}
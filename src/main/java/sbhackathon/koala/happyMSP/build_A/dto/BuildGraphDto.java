@@ -0,0 +1,57 @@
+package sbhackathon.koala.happyMSP.build_A.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Build dependencies between the services of a repository: services whose Dockerfile starts
+ * from (or copies from) the image of another service, and builder stages that several
+ * Dockerfiles share and that are built once up front.
+ */
+@Getter
+@Builder
+public class BuildGraphDto {
+
+    // Every service after the services it depends on
+    private final List<String> buildOrder;
+
+    // service -> (reference as written in FROM / COPY --from -> service building that image)
+    private final Map<String, Map<String, String>> dependencies;
+
+    // service -> registry images it builds from (other services' images excluded)
+    private final Map<String, List<String>> baseImages;
+
+    private final List<SharedStage> sharedStages;
+
+    public Map<String, String> dependenciesOf(String service) {
+        return dependencies.getOrDefault(service, Map.of());
+    }
+
+    public List<SharedStage> sharedStagesOf(String service) {
+        return sharedStages.stream()
+                .filter(stage -> stage.getServices().contains(service))
+                .toList();
+    }
+
+    public Set<String> baseImagesOf(Collection<String> services) {
+        Set<String> images = new LinkedHashSet<>();
+        services.forEach(service -> images.addAll(baseImages.getOrDefault(service, List.of())));
+        return images;
+    }
+
+    @Getter
+    @Builder
+    public static class SharedStage {
+        // Hash of the stage's Dockerfile
+        private final String id;
+        // Global ARGs, FROM and the instructions up to the first one that reads the build context
+        private final String dockerfile;
+        private final List<String> services;
+    }
+}
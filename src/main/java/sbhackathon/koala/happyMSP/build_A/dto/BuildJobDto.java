@@ -0,0 +1,38 @@
+package sbhackathon.koala.happyMSP.build_A.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
+import sbhackathon.koala.happyMSP.entity.BuildJobStatus;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Builder
+public class BuildJobDto {
+    private final long jobId;
+    private final int repoId;
+    private final String repoUrl;
+    private final String commitSha;
+    private final BuildJobStatus status;
+    private final int priority;
+    private final String errorMessage;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime startedAt;
+    private final LocalDateTime finishedAt;
+
+    public static BuildJobDto from(BuildJob job) {
+        return BuildJobDto.builder()
+                .jobId(job.getId())
+                .repoId(job.getRepositoryId())
+                .repoUrl(job.getRepositoryUrl())
+                .commitSha(job.getCommitSha())
+                .status(job.getStatus())
+                .priority(job.getPriority())
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
@@ -10,5 +10,9 @@ public class BuildResultDto {
     private final String imageId;
     private final String imageTag;
     private final boolean success;
+    private final String buildId;
+    // Retained tail of the build output; the full log is fetched by buildId
     private final String buildLog;
-}
\ No newline at end of file
+    // Size of the build context sent to the daemon, null if the build failed before measuring it
+    private final Long contextBytes;
+}
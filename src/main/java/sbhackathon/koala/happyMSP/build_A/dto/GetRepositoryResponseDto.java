@@ -8,11 +8,18 @@ import lombok.Getter;
 public class GetRepositoryResponseDto {
     private final RepositoryState state;
     private final RepositoryDto repository;
+    // Commit of the running build job, if any
+    private final String buildingCommit;
+    // Commit waiting in the build queue, if any
+    private final String queuedCommit;
 
-    public static GetRepositoryResponseDto of(RepositoryState state, RepositoryDto repository) {
+    public static GetRepositoryResponseDto of(RepositoryState state, RepositoryDto repository,
+                                              String buildingCommit, String queuedCommit) {
         return GetRepositoryResponseDto.builder()
                 .state(state)
                 .repository(repository)
+                .buildingCommit(buildingCommit)
+                .queuedCommit(queuedCommit)
                 .build();
     }
 
@@ -7,4 +7,8 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class PostRepositoryRequestDto {
     private String repositoryUrl;
-}
\ No newline at end of file
+    // Optional; falls back to build.docker.backend when not given
+    private BuildBackend buildBackend;
+    // Optional; higher priority jobs are claimed first (default 0)
+    private Integer priority;
+}
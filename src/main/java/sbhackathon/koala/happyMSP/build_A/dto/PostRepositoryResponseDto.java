@@ -8,11 +8,14 @@ import lombok.Getter;
 public class PostRepositoryResponseDto {
     private final PostRepositoryState state;
     private final RepositoryDto repository;
+    // Build job queued for this request; poll GET /build-jobs/{jobId} for its progress
+    private final Long jobId;
 
-    public static PostRepositoryResponseDto success(RepositoryDto repository) {
+    public static PostRepositoryResponseDto success(RepositoryDto repository, long jobId) {
         return PostRepositoryResponseDto.builder()
                 .state(PostRepositoryState.SUCCESS)
                 .repository(repository)
+                .jobId(jobId)
                 .build();
     }
 
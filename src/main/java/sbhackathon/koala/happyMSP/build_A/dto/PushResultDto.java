@@ -8,6 +8,8 @@ import lombok.Getter;
 public class PushResultDto {
     private final String service;
     private final String imageUri;
+    // Manifest digest of the pushed image, if the push path reported one
+    private final String digest;
     private final boolean success;
     private final String errorMessage;
 }
\ No newline at end of file
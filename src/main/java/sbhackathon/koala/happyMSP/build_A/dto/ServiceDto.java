@@ -12,6 +12,8 @@ public class ServiceDto {
     private final String serviceName;
     private final String address;
     private final ServiceStatus status;
+    // Build log id of the service's last build, for GET /build-logs/{buildId}
+    private final String buildId;
 
     public static ServiceDto from(Service service) {
         return ServiceDto.builder()
@@ -19,6 +21,7 @@ public class ServiceDto {
                 .serviceName(service.getName())
                 .address(service.getAddress())
                 .status(service.getStatus())
+                .buildId(service.getBuildId())
                 .build();
     }
 }
\ No newline at end of file
@@ -3,12 +3,23 @@ package sbhackathon.koala.happyMSP.build_A.dto;
 import lombok.Builder;
 import lombok.Getter;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Getter
 @Builder
 public class ServiceScanResultDto {
     private final List<ServiceInfo> services;
+
+    /**
+     * @return base images of all services, each listed once
+     */
+    public Set<String> getBaseImages() {
+        Set<String> baseImages = new LinkedHashSet<>();
+        services.forEach(service -> baseImages.addAll(service.getBaseImages()));
+        return baseImages;
+    }
     
     @Getter
     @Builder
@@ -17,5 +28,7 @@ public class ServiceScanResultDto {
         private final String path;
         private final boolean dockerfileExists;
         private final Integer portNumber;
+        // Registry images referenced by FROM, excluding earlier build stages and scratch
+        private final List<String> baseImages;
     }
 }
\ No newline at end of file
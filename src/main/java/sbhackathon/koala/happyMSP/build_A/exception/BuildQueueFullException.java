@@ -0,0 +1,7 @@
+package sbhackathon.koala.happyMSP.build_A.exception;
+
+public class BuildQueueFullException extends RuntimeException {
+    public BuildQueueFullException(long queuedJobs) {
+        super("Build queue is full (" + queuedJobs + " jobs queued)");
+    }
+}
@@ -0,0 +1,77 @@
+package sbhackathon.koala.happyMSP.build_A.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildBackend;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
+import sbhackathon.koala.happyMSP.entity.BuildJobStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface BuildJobRepository extends JpaRepository<BuildJob, Long> {
+    List<BuildJob> findTop10ByStatusOrderByPriorityDescIdAsc(BuildJobStatus status);
+
+    Optional<BuildJob> findFirstByRepositoryIdAndStatusOrderByIdDesc(int repositoryId, BuildJobStatus status);
+
+    long countByStatus(BuildJobStatus status);
+
+    Optional<BuildJob> findFirstByRepositoryIdOrderByIdDesc(int repositoryId);
+
+    /**
+     * Points a still-queued job at a newer commit. Returns 0 if a worker claimed the job meanwhile.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update BuildJob j set j.commitSha = :commitSha, j.buildBackend = :buildBackend, " +
+            "j.priority = case when j.priority > :priority then j.priority else :priority end " +
+            "where j.id = :id and j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.QUEUED")
+    int supersede(@Param("id") long id, @Param("commitSha") String commitSha,
+                  @Param("buildBackend") BuildBackend buildBackend, @Param("priority") int priority);
+
+    /**
+     * Claims a queued job for a worker. Only one worker (of any instance) sees an update count of 1,
+     * and none does while another job of the same repository is running (single flight).
+     * Native because MySQL only lets an update read its own table through a derived table.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update build_job set status = 'RUNNING', worker_id = :workerId, started_at = :now, " +
+            "heartbeat_at = :now, attempts = attempts + 1 " +
+            "where id = :id and status = 'QUEUED' and not exists (select 1 from " +
+            "(select repository_id from build_job where status = 'RUNNING') running " +
+            "where running.repository_id = build_job.repository_id)", nativeQuery = true)
+    int claim(@Param("id") long id, @Param("workerId") String workerId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update BuildJob j set j.heartbeatAt = :now " +
+            "where j.workerId = :workerId and j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.RUNNING")
+    int heartbeat(@Param("workerId") String workerId, @Param("now") LocalDateTime now);
+
+    @Query("select j from BuildJob j where j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.RUNNING " +
+            "and j.heartbeatAt < :cutoff")
+    List<BuildJob> findStaleRunning(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Puts a job whose worker died back in the queue; no-op if its heartbeat was refreshed meanwhile.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update BuildJob j set j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.QUEUED, " +
+            "j.workerId = null, j.startedAt = null, j.heartbeatAt = null " +
+            "where j.id = :id and j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.RUNNING " +
+            "and j.heartbeatAt < :cutoff")
+    int requeueStale(@Param("id") long id, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("update BuildJob j set j.cancelRequested = true " +
+            "where j.repositoryId = :repositoryId and j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.RUNNING")
+    int requestCancel(@Param("repositoryId") int repositoryId);
+
+    @Query("select j.id from BuildJob j where j.workerId = :workerId and j.cancelRequested = true " +
+            "and j.status = sbhackathon.koala.happyMSP.entity.BuildJobStatus.RUNNING")
+    List<Long> findCancelRequested(@Param("workerId") String workerId);
+
+    boolean existsByRepositoryIdAndStatusIn(int repositoryId, Collection<BuildJobStatus> statuses);
+}
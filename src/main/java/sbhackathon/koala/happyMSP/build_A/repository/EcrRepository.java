@@ -2,9 +2,15 @@ package sbhackathon.koala.happyMSP.build_A.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import sbhackathon.koala.happyMSP.entity.Ecr;
+import sbhackathon.koala.happyMSP.entity.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface EcrRepository extends JpaRepository<Ecr, Integer> {
     List<Ecr> findByService_Id(int serviceId);
+
+    Optional<Ecr> findFirstByService_RepositoryAndNameOrderByEcrIdDesc(Repository repository, String name);
+
+    Optional<Ecr> findFirstByContentHashOrderByEcrIdDesc(String contentHash);
 }
@@ -3,9 +3,9 @@ package sbhackathon.koala.happyMSP.build_A.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import sbhackathon.koala.happyMSP.build_A.config.BuildContextSource;
 import sbhackathon.koala.happyMSP.build_A.dto.*;
 import sbhackathon.koala.happyMSP.entity.Ecr;
 import sbhackathon.koala.happyMSP.entity.Repository;
@@ -13,28 +13,66 @@ import sbhackathon.koala.happyMSP.entity.ServiceStatus;
 import sbhackathon.koala.happyMSP.build_A.repository.EcrRepository;
 import sbhackathon.koala.happyMSP.build_A.repository.RepoRepository;
 import sbhackathon.koala.happyMSP.deployment_CD.repository.ServiceRepository;
+import sbhackathon.koala.happyMSP.build_A.util.BuildLogBuffer;
+import sbhackathon.koala.happyMSP.build_A.util.CancellationToken;
 import sbhackathon.koala.happyMSP.build_A.util.ImageTagGenerator;
+import sbhackathon.koala.happyMSP.monitor_B.service.AwsEcrCheckService;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AsyncBuildService {
 
+    /**
+     * State shared by the service pipelines of one job.
+     *
+     * @param images            service -> image the services built from it use, completed with null on failure
+     * @param sharedStageBuilds shared stage id -> its build
+     * @param contextBytes      service -> build context size of its build, recorded with the pushed image
+     */
+    private record JobContext(Repository repository, String repositoryUrl, String repositoryName,
+                              CloneResultDto cloneResult, BuildBackend buildBackend, CancellationToken cancellation,
+                              BuildGraphDto graph, Map<String, CompletableFuture<String>> images,
+                              Map<String, CompletableFuture<Void>> sharedStageBuilds, Map<String, Long> contextBytes) {}
+
+    // Build-side statuses a service can be left in when the deployment is interrupted
+    public static final Set<ServiceStatus> RESUMABLE_STATUSES = EnumSet.of(
+            ServiceStatus.PENDING, ServiceStatus.BUILDING, ServiceStatus.BUILT, ServiceStatus.PUSHING);
+
     private final GitService gitService;
+    private final ServiceScanner serviceScanner;
+    private final BaseImagePrefetcher baseImagePrefetcher;
     private final DockerService dockerService;
+    private final BuildLogService buildLogService;
     private final EcrService ecrService;
     private final ImageTagGenerator imageTagGenerator;
     private final RepoRepository repositoryRepo;
     private final ServiceRepository serviceRepository;
     private final EcrRepository ecrRepository;
+    private final AwsEcrCheckService awsEcrCheckService;
+    private final Executor dockerBuildExecutor;
+    private final Executor ecrPushExecutor;
 
     @Value("${build.workspace.path}")
     private String workspacePath;
@@ -42,126 +80,122 @@ public class AsyncBuildService {
     @Value("${aws.ecr.registry.uri}")
     private String ecrRegistryUri;
 
-    @Async("buildTaskExecutor")
-    public CompletableFuture<Void> startAsyncDeployment(int repositoryId, String repositoryUrl, String latestCommit) {
+    // Paths outside services/ that every service depends on (e.g. "libs/"); a change rebuilds all
+    @Value("${build.diff.shared-paths:}")
+    private List<String> sharedPaths;
+
+    @Value("${build.docker.context-source:GIT}")
+    private BuildContextSource contextSource;
+
+    /**
+     * Runs a claimed build job: clone, then build -> push every service registered by the job.
+     * When the job is cancelled for a newer commit, running docker builds are killed, pushed
+     * images are kept (the next job reuses them for services that did not change since) and unfinished
+     * services are dropped.
+     *
+     * @return true if the deployment ran to completion (individual services may still have failed)
+     */
+    public boolean runDeployment(long jobId, int repositoryId, String repositoryUrl, String commitSha,
+                                 BuildBackend buildBackend, CancellationToken cancellation) {
         log.info("=== ASYNC DEPLOYMENT STARTED === Repository ID: {}", repositoryId);
         String projectId = "project-" + repositoryId;
+        boolean completed = false;
         
         try {
 
-            CloneResultDto cloneResult = gitService.cloneRepository(repositoryUrl, projectId);
+            // Builds streaming their context from Git objects need no working tree
+            CloneResultDto cloneResult = gitService.cloneRepository(repositoryUrl, projectId, commitSha,
+                    contextSource == BuildContextSource.WORKTREE);
             log.info("Git clone completed: {}", cloneResult.getGitSha());
+            cancellation.throwIfCancelled();
 
             Repository repository = repositoryRepo.findById(repositoryId)
                     .orElseThrow(() -> new RuntimeException("Repository not found"));
                     
-            List<String> deployedServices = new ArrayList<>();
-            
             // Extract repository name from URL for Docker image tagging
             String repositoryName = imageTagGenerator.extractRepositoryNameFromUrl(repositoryUrl);
 
-            // Find all services for this repository (avoid lazy loading issue)
-            List<sbhackathon.koala.happyMSP.entity.Service> services = serviceRepository.findByRepository(repository);
-            
-            for (sbhackathon.koala.happyMSP.entity.Service service : services) {
-                try {
-                    log.info("Starting deployment for service: {}", service.getName());
-                    
-                    // Update status to BUILDING
-                    updateServiceStatus(service, ServiceStatus.BUILDING);
-                    log.info("Service {} status updated to BUILDING", service.getName());
-                    
-                    String imageTag = imageTagGenerator.generate(repositoryName, service.getName(),
-                            cloneResult.getGitSha());
-                    log.info("Generated image tag: {}", imageTag);
+            // Services registered by this job; a job resumed after a crash also picks up the
+            // services that were interrupted mid-pipeline
+            List<sbhackathon.koala.happyMSP.entity.Service> services = serviceRepository.findByBuildJobId(jobId).stream()
+                    .filter(service -> RESUMABLE_STATUSES.contains(service.getStatus()))
+                    .toList();
 
-                    // Find service directory path (reconstruct from service scan)
-                    String servicePath = cloneResult.getRepoPath() + "/services/" + service.getName();
-                    
-                    // Docker Build Phase
-                    BuildResultDto buildResult = dockerService.buildImage(
-                            service.getName(),
-                            servicePath,
-                            imageTag);
-
-                    if (buildResult.isSuccess()) {
-                        // Update status to BUILT
-                        updateServiceStatus(service, ServiceStatus.BUILT);
-                        log.info("Service {} built successfully, status updated to BUILT", service.getName());
-                        
-                        try {
-                            // Update status to PUSHING
-                            updateServiceStatus(service, ServiceStatus.PUSHING);
-                            log.info("Service {} status updated to PUSHING", service.getName());
-                            
-                            // ECR Push Phase
-                            String registryUri = ecrRegistryUri;
-                            PushResultDto pushResult = ecrService.pushImage(
-                                    service.getName(),
-                                    imageTag,
-                                    registryUri);
-
-                            if (pushResult.isSuccess()) {
-                                // Update status to PUSHED
-                                updateServiceStatusAndAddress(service, ServiceStatus.PUSHED, pushResult.getImageUri());
-                                
-                                // Create and save ECR Entity
-                                createEcrEntity(service, pushResult.getImageUri(), imageTag);
-                                
-                                deployedServices.add(service.getName());
-                                log.info("Service {} pushed successfully with ECR URI: {}, port: {}", 
-                                        service.getName(), pushResult.getImageUri(), service.getPortNumber());
-                            } else {
-                                updateServiceStatus(service, ServiceStatus.FAILED);
-                                log.error("Failed to push service {} to ECR: {}", service.getName(),
-                                        pushResult.getErrorMessage());
+            BuildGraphDto graph = gitService.readClonedHead(cloneResult.getRepoPath(),
+                    (gitRepository, commit) -> serviceScanner.buildGraph(gitRepository, commit.getTree()));
+
+            // Usually already pulled when the job was queued; covers resumed jobs and expired pulls
+            if (buildBackend == BuildBackend.CLASSIC) {
+                baseImagePrefetcher.prefetch(graph.baseImagesOf(services.stream()
+                        .map(sbhackathon.koala.happyMSP.entity.Service::getName)
+                        .toList()));
+            }
+
+            Map<String, Ecr> unchangedImages = findUnchangedImages(cloneResult, repository, services, graph);
+            Map<String, String> contentHashes = computeContentHashes(cloneResult, graph);
+            JobContext job = new JobContext(repository, repositoryUrl, repositoryName, cloneResult, buildBackend,
+                    cancellation, graph, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+            // Services start in dependency order, each waiting only for the images it builds from,
+            // so independent services build in parallel. Each service runs build -> push on the
+            // stage pools, so pushing one service overlaps building the next and a failure only
+            // affects its own pipeline and the services built from it.
+            List<CompletableFuture<String>> pipelines = new ArrayList<>();
+            for (sbhackathon.koala.happyMSP.entity.Service service : inBuildOrder(services, graph)) {
+                String contentHash = contentHashes.get(service.getName());
+                CompletableFuture<String> imageReady = new CompletableFuture<>();
+                job.images().put(service.getName(), imageReady);
+
+                CompletableFuture<String> pipeline = resolveBuildContexts(job, service.getName())
+                        .thenCompose(buildContexts -> startPipeline(job, service, unchangedImages, contentHash,
+                                buildContexts, imageReady));
+
+                pipelines.add(pipeline
+                        // Dependents of a failed service stop waiting
+                        .whenComplete((result, e) -> imageReady.complete(null))
+                        .exceptionally(e -> {
+                            if (!cancellation.isCancelled()) {
+                                markFailed(service, e);
                             }
-                        } catch (Exception pushException) {
-                            updateServiceStatus(service, ServiceStatus.FAILED);
-                            log.error("Exception during ECR push for service {}: {}", service.getName(), 
-                                    pushException.getMessage(), pushException);
-                        }
-                    } else {
-                        updateServiceStatus(service, ServiceStatus.FAILED);
-                        log.error("Failed to build service {}: {}", service.getName(), buildResult.getBuildLog());
-                    }
-                } catch (Exception e) {
-                    try {
-                        updateServiceStatus(service, ServiceStatus.FAILED);
-                    } catch (Exception saveException) {
-                        log.error("Failed to save FAILED status for service {}: {}", service.getName(), 
-                                saveException.getMessage());
-                    }
-                    log.error("Unexpected error deploying service {}: {}", service.getName(), e.getMessage(), e);
-                }
+                            return null;
+                        }));
             }
 
-            repository.updateLatestCommit(latestCommit);
+            CompletableFuture.allOf(pipelines.toArray(new CompletableFuture[0])).join();
+            cancellation.throwIfCancelled();
+
+            List<String> deployedServices = pipelines.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .toList();
+
+            repository.updateLatestCommit(cloneResult.getGitSha());
             repositoryRepo.save(repository);
 
             log.info("=== ASYNC DEPLOYMENT COMPLETED === Repository ID: {}. Deployed services: {}", repositoryId, deployedServices);
+            completed = true;
 
         } catch (Exception e) {
+            if (cancellation.isCancelled()) {
+                discardUnfinishedServices(jobId);
+                log.info("=== ASYNC DEPLOYMENT CANCELLED === Repository ID: {}, job {} superseded", repositoryId, jobId);
+                return false;
+            }
+
             log.error("=== ASYNC DEPLOYMENT FAILED === Repository ID: {}, Error: {}", repositoryId, e.getMessage(), e);
 
             // Handle async deployment failures gracefully without affecting API response
             try {
-                // Set all services in this repository to FAILED if they're still in progress
-                Repository repository = repositoryRepo.findById(repositoryId)
-                        .orElseThrow(() -> new RuntimeException("Repository not found"));
-                
-                List<sbhackathon.koala.happyMSP.entity.Service> failedServices = serviceRepository.findByRepository(repository);
+                // Set this job's services to FAILED if they're still in progress (a queued job's
+                // services of the same repository are left alone)
+                List<sbhackathon.koala.happyMSP.entity.Service> failedServices = serviceRepository.findByBuildJobId(jobId);
                 for (sbhackathon.koala.happyMSP.entity.Service service : failedServices) {
-                    if (service.getStatus() == ServiceStatus.PENDING ||
-                        service.getStatus() == ServiceStatus.BUILDING ||
-                        service.getStatus() == ServiceStatus.BUILT ||
-                        service.getStatus() == ServiceStatus.PUSHING) {
+                    if (RESUMABLE_STATUSES.contains(service.getStatus())) {
                         updateServiceStatus(service, ServiceStatus.FAILED);
                         log.warn("Set service {} status to FAILED due to async deployment failure", service.getName());
                     }
                 }
                 
-                repositoryRepo.save(repository);
                 log.info("Completed failure cleanup for repository: {}", repositoryId);
             } catch (Exception cleanupException) {
                 log.error("Failed to cleanup services after async deployment failure - Repository {}: {}", 
@@ -177,7 +211,386 @@ public class AsyncBuildService {
         }
 
         log.info("=== ASYNC DEPLOYMENT FINISHED === Repository ID: {}", repositoryId);
-        return CompletableFuture.completedFuture(null);
+        return completed;
+    }
+
+    /**
+     * Finds the services whose last pushed image can be deployed again as is: the service's
+     * subtree, the subtrees of the services it is built from and the shared paths are unchanged
+     * between the commit that image was built from and the new commit. Images without a recorded
+     * source commit, or whose commit cannot be diffed, are not reused this way.
+     *
+     * @return service name -> its last image, for the unchanged services
+     */
+    private Map<String, Ecr> findUnchangedImages(CloneResultDto cloneResult, Repository repository,
+                                                 List<sbhackathon.koala.happyMSP.entity.Service> services,
+                                                 BuildGraphDto graph) {
+        Map<String, Optional<Set<String>>> changedPathsByCommit = new HashMap<>();
+        Map<String, Ecr> unchangedImages = new HashMap<>();
+        for (sbhackathon.koala.happyMSP.entity.Service service : services) {
+            Optional<Ecr> lastImage = ecrRepository
+                    .findFirstByService_RepositoryAndNameOrderByEcrIdDesc(repository, service.getName());
+            if (lastImage.isEmpty() || lastImage.get().getSourceCommit() == null) {
+                continue;
+            }
+
+            String sourceCommit = lastImage.get().getSourceCommit();
+            Optional<Set<String>> changedPaths = changedPathsByCommit.computeIfAbsent(sourceCommit,
+                    commit -> gitService.findChangedPaths(cloneResult.getRepoPath(), commit, cloneResult.getGitSha()));
+            if (changedPaths.isEmpty()) {
+                continue;
+            }
+
+            Set<String> inputs = new HashSet<>(transitiveDependencies(graph, service.getName()));
+            inputs.add(service.getName());
+            boolean changed = changedPaths.get().stream().anyMatch(path ->
+                    inputs.stream().anyMatch(input -> path.startsWith("services/" + input + "/"))
+                            || sharedPaths.stream().anyMatch(shared -> !shared.isBlank() && path.startsWith(shared.trim())));
+            if (!changed) {
+                unchangedImages.put(service.getName(), lastImage.get());
+            }
+        }
+        log.info("Services unchanged since their last image: {}", unchangedImages.keySet());
+        return unchangedImages;
+    }
+
+    private Set<String> transitiveDependencies(BuildGraphDto graph, String service) {
+        Set<String> dependencies = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(graph.dependenciesOf(service).values());
+        while (!pending.isEmpty()) {
+            String dependency = pending.pop();
+            if (dependencies.add(dependency)) {
+                pending.addAll(graph.dependenciesOf(dependency).values());
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Finds an already pushed image for the service: its last image when nothing it is built from
+     * changed since, otherwise any image built from identical content.
+     */
+    private Optional<Ecr> findReusableImage(sbhackathon.koala.happyMSP.entity.Service service,
+                                            Map<String, Ecr> unchangedImages, String contentHash) {
+        Ecr unchangedImage = unchangedImages.get(service.getName());
+        if (unchangedImage != null) {
+            return Optional.of(unchangedImage);
+        }
+
+        if (contentHash != null) {
+            Optional<Ecr> cachedEcr = ecrRepository.findFirstByContentHashOrderByEcrIdDesc(contentHash);
+            cachedEcr.ifPresent(ecr -> log.info("Build cache hit for service {}: {}", service.getName(), ecr.getUri()));
+            return cachedEcr;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Content hash of every service in the graph. A service built from another service's image
+     * includes that image's hash, so changing the base invalidates the images built on it.
+     */
+    private Map<String, String> computeContentHashes(CloneResultDto cloneResult, BuildGraphDto graph) {
+        Map<String, String> contentHashes = new HashMap<>();
+        for (String service : graph.getBuildOrder()) {
+            Map<String, String> inputs = new HashMap<>();
+            boolean complete = true;
+            for (String dependency : graph.dependenciesOf(service).values()) {
+                String dependencyHash = contentHashes.get(dependency);
+                complete &= dependencyHash != null;
+                inputs.put("service:" + dependency, dependencyHash);
+            }
+
+            String contentHash = complete
+                    ? gitService.resolveTreeId(cloneResult.getRepoPath(), "services/" + service)
+                            .map(treeId -> imageTagGenerator.generateContentHash(treeId, inputs))
+                            .orElse(null)
+                    : null;
+            if (contentHash != null) {
+                contentHashes.put(service, contentHash);
+            }
+        }
+        return contentHashes;
+    }
+
+    private List<sbhackathon.koala.happyMSP.entity.Service> inBuildOrder(List<sbhackathon.koala.happyMSP.entity.Service> services,
+                                                                         BuildGraphDto graph) {
+        List<String> order = graph.getBuildOrder();
+        return services.stream()
+                .sorted(Comparator.comparingInt(service -> {
+                    int index = order.indexOf(service.getName());
+                    return index < 0 ? order.size() : index;
+                }))
+                .toList();
+    }
+
+    /**
+     * Waits for the images of the services this one builds from. A dependency that is not part
+     * of the job (not rebuilt) is taken from its last pushed image.
+     *
+     * @return reference in the Dockerfile -> image to use for it
+     */
+    private CompletableFuture<Map<String, String>> resolveBuildContexts(JobContext job, String serviceName) {
+        Map<String, String> dependencies = job.graph().dependenciesOf(serviceName);
+        Map<String, CompletableFuture<String>> images = new HashMap<>();
+        dependencies.values().forEach(dependency -> images.put(dependency, job.images().computeIfAbsent(dependency,
+                name -> CompletableFuture.completedFuture(ecrRepository
+                        .findFirstByService_RepositoryAndNameOrderByEcrIdDesc(job.repository(), name)
+                        .map(Ecr::getUri)
+                        .orElse(null)))));
+
+        return CompletableFuture.allOf(images.values().toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                    Map<String, String> buildContexts = new LinkedHashMap<>();
+                    dependencies.forEach((reference, dependency) -> {
+                        String image = images.get(dependency).join();
+                        if (image == null) {
+                            throw new IllegalStateException("No image of service " + dependency
+                                    + " to build " + serviceName + " from");
+                        }
+                        buildContexts.put(reference, image);
+                    });
+                    return buildContexts;
+                });
+    }
+
+    private CompletableFuture<String> startPipeline(JobContext job, sbhackathon.koala.happyMSP.entity.Service service,
+                                                    Map<String, Ecr> unchangedImages, String contentHash,
+                                                    Map<String, String> buildContexts, CompletableFuture<String> imageReady) {
+        Optional<Ecr> reusableImage = findReusableImage(service, unchangedImages, contentHash);
+        if (reusableImage.isPresent()) {
+            Ecr ecr = reusableImage.get();
+            return CompletableFuture.completedFuture(ecr)
+                    // A content hash hit may come from another repository; record the commit it matches here
+                    .thenApply(ignored -> reuseStage(service, ecr.getUri(), ecr.getTag(), contentHash,
+                            job.cloneResult().getGitSha(), imageReady));
+        }
+        if (service.getStatus() != ServiceStatus.PENDING) {
+            return resumePipeline(job, service, contentHash, buildContexts, imageReady);
+        }
+        return buildPipeline(job, service, contentHash, buildContexts, imageReady);
+    }
+
+    private CompletableFuture<String> buildPipeline(JobContext job, sbhackathon.koala.happyMSP.entity.Service service,
+                                                    String contentHash, Map<String, String> buildContexts,
+                                                    CompletableFuture<String> imageReady) {
+        // A stage shared with other services is built once, by whichever pipeline gets there first
+        CompletableFuture<?>[] sharedStages = job.graph().sharedStagesOf(service.getName()).stream()
+                .map(stage -> job.sharedStageBuilds().computeIfAbsent(stage.getId(), id -> CompletableFuture
+                        .runAsync(() -> dockerService.buildSharedStage(job.graph(), stage, job.buildBackend(),
+                                job.cancellation()),
+                                dockerBuildExecutor)
+                        .exceptionally(e -> {
+                            log.warn("Shared stage {} failed: {}", id, e.getMessage());
+                            return null;
+                        })))
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(sharedStages)
+                .thenApplyAsync(ignored -> buildStage(job, service, buildContexts, imageReady), dockerBuildExecutor)
+                .thenApplyAsync(imageTag -> imageTag != null
+                                ? pushStage(job, service, imageTag, contentHash, imageReady)
+                                : null,
+                        ecrPushExecutor);
+    }
+
+    /**
+     * Continues a service whose pipeline was interrupted (process crash) from the last stage whose
+     * output still exists: an image already in ECR is recorded, a locally built image is pushed,
+     * and anything else is built again.
+     */
+    private CompletableFuture<String> resumePipeline(JobContext job, sbhackathon.koala.happyMSP.entity.Service service,
+                                                     String contentHash, Map<String, String> buildContexts,
+                                                     CompletableFuture<String> imageReady) {
+        String imageTag = imageTagGenerator.generate(job.repositoryName(), service.getName(), job.cloneResult().getGitSha());
+        String imageUri = ecrRegistryUri + "/" + imageTag;
+
+        if (awsEcrCheckService.isImagePresent(imageUri, imageTag)) {
+            log.info("Resuming service {} (was {}): image already in ECR", service.getName(), service.getStatus());
+            return CompletableFuture.completedFuture(imageUri)
+                    .thenApply(uri -> reuseStage(service, uri, imageTag, contentHash, job.cloneResult().getGitSha(),
+                            imageReady));
+        }
+
+        if (dockerService.imageExists(imageTag)) {
+            log.info("Resuming service {} (was {}): pushing existing local image", service.getName(), service.getStatus());
+            return CompletableFuture.supplyAsync(
+                    () -> pushStage(job, service, imageTag, contentHash, imageReady), ecrPushExecutor);
+        }
+
+        log.info("Resuming service {} (was {}): no image found, rebuilding", service.getName(), service.getStatus());
+        return buildPipeline(job, service, contentHash, buildContexts, imageReady);
+    }
+
+    /**
+     * Records an existing image for the service instead of building and pushing it again.
+     *
+     * @param sourceCommit the commit of this repository whose content the image matches
+     */
+    private String reuseStage(sbhackathon.koala.happyMSP.entity.Service service, String imageUri, String imageTag,
+                              String contentHash, String sourceCommit, CompletableFuture<String> imageReady) {
+        updateServiceStatusAndAddress(service, ServiceStatus.PUSHED, imageUri);
+        createEcrEntity(service, imageUri, imageTag, contentHash, null, sourceCommit);
+        imageReady.complete(imageUri);
+        log.info("Service {} reusing image {}", service.getName(), imageUri);
+        return service.getName();
+    }
+
+    /**
+     * @return the built image tag, or null if the build failed
+     */
+    private String buildStage(JobContext job, sbhackathon.koala.happyMSP.entity.Service service,
+                              Map<String, String> buildContexts, CompletableFuture<String> imageReady) {
+        CancellationToken cancellation = job.cancellation();
+        cancellation.throwIfCancelled();
+        log.info("Starting deployment for service: {}", service.getName());
+
+        // Update status to BUILDING
+        updateServiceStatus(service, ServiceStatus.BUILDING);
+        log.info("Service {} status updated to BUILDING", service.getName());
+
+        String imageTag = imageTagGenerator.generate(job.repositoryName(), service.getName(),
+                job.cloneResult().getGitSha());
+        log.info("Generated image tag: {}", imageTag);
+
+        if (job.buildBackend() == BuildBackend.BUILDKIT) {
+            ensureCacheRepository(imageTag);
+        } else if (!buildContexts.isEmpty()) {
+            // Images of sibling services that were not rebuilt are pulled from ECR by the docker CLI
+            ensureRegistryLogin();
+        }
+
+        // Docker Build Phase (output streamed to the repository's SSE stream and spilled to disk)
+        BuildLogBuffer buildLog = buildLogService.open(job.repositoryUrl(), service.getName());
+        service.updateBuildId(buildLog.getBuildId());
+        serviceRepository.save(service);
+        BuildResultDto buildResult;
+        try {
+            buildResult = dockerService.buildImage(
+                    service.getName(),
+                    job.cloneResult().getRepoPath(),
+                    imageTag,
+                    job.buildBackend(),
+                    buildContexts,
+                    buildLog,
+                    cancellation);
+        } finally {
+            buildLogService.close(buildLog);
+        }
+        // A killed docker build reports a failure; do not record it as one
+        cancellation.throwIfCancelled();
+
+        if (!buildResult.isSuccess()) {
+            updateServiceStatus(service, ServiceStatus.FAILED);
+            log.error("Failed to build service {} (build log: {}): {}", service.getName(), buildResult.getBuildId(),
+                    buildResult.getBuildLog());
+            return null;
+        }
+
+        if (buildResult.getContextBytes() != null) {
+            job.contextBytes().put(service.getName(), buildResult.getContextBytes());
+        }
+
+        // Update status to BUILT
+        updateServiceStatus(service, ServiceStatus.BUILT);
+        log.info("Service {} built successfully, status updated to BUILT", service.getName());
+
+        // The classic builder resolves images from the local daemon, so dependents need not wait for the push
+        if (job.buildBackend() == BuildBackend.CLASSIC) {
+            imageReady.complete(imageTag);
+        }
+        return imageTag;
+    }
+
+    // The BuildKit cache ref lives in the service's ECR repository, which must exist before the first export
+    private void ensureCacheRepository(String imageTag) {
+        try {
+            ecrService.ensureRepositoryExists(imageTag.split(":")[0]);
+        } catch (Exception e) {
+            log.warn("Failed to ensure cache repository for {}: {}", imageTag, e.getMessage());
+        }
+        ensureRegistryLogin();
+    }
+
+    // The Engine API push sends its credentials per request, so the daemon may never have logged in
+    private void ensureRegistryLogin() {
+        try {
+            ecrService.ensureLoggedIn(ecrRegistryUri);
+        } catch (Exception e) {
+            log.warn("Failed to log the docker daemon into {}: {}", ecrRegistryUri, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the service name if the image was pushed, or null if the push failed
+     */
+    private String pushStage(JobContext job, sbhackathon.koala.happyMSP.entity.Service service, String imageTag,
+                             String contentHash, CompletableFuture<String> imageReady) {
+        job.cancellation().throwIfCancelled();
+        try {
+            // Update status to PUSHING
+            updateServiceStatus(service, ServiceStatus.PUSHING);
+            log.info("Service {} status updated to PUSHING", service.getName());
+
+            // ECR Push Phase
+            PushResultDto pushResult = ecrService.pushImage(
+                    service.getName(),
+                    imageTag,
+                    ecrRegistryUri);
+
+            if (!pushResult.isSuccess()) {
+                updateServiceStatus(service, ServiceStatus.FAILED);
+                log.error("Failed to push service {} to ECR: {}", service.getName(),
+                        pushResult.getErrorMessage());
+                return null;
+            }
+
+            // Update status to PUSHED
+            updateServiceStatusAndAddress(service, ServiceStatus.PUSHED, pushResult.getImageUri());
+
+            // Create and save ECR Entity
+            Optional<Ecr> previousImage = ecrRepository.findFirstByService_RepositoryAndNameOrderByEcrIdDesc(
+                    job.repository(), service.getName());
+            Long contextBytes = job.contextBytes().get(service.getName());
+            createEcrEntity(service, pushResult.getImageUri(), imageTag, contentHash, contextBytes,
+                    job.cloneResult().getGitSha());
+            imageReady.complete(pushResult.getImageUri());
+            logContextGrowth(service.getName(), previousImage, contextBytes);
+
+            log.info("Service {} pushed successfully with ECR URI: {} ({}), port: {}",
+                    service.getName(), pushResult.getImageUri(), pushResult.getDigest(), service.getPortNumber());
+            return service.getName();
+        } catch (Exception pushException) {
+            updateServiceStatus(service, ServiceStatus.FAILED);
+            log.error("Exception during ECR push for service {}: {}", service.getName(),
+                    pushException.getMessage(), pushException);
+            return null;
+        }
+    }
+
+    private void markFailed(sbhackathon.koala.happyMSP.entity.Service service, Throwable e) {
+        try {
+            updateServiceStatus(service, ServiceStatus.FAILED);
+        } catch (Exception saveException) {
+            log.error("Failed to save FAILED status for service {}: {}", service.getName(),
+                    saveException.getMessage());
+        }
+        log.error("Unexpected error deploying service {}: {}", service.getName(), e.getMessage(), e);
+    }
+
+    /**
+     * Drops the services a cancelled job had not finished. Pushed services keep their image and its
+     * source commit, which the superseding job reuses for services that did not change since.
+     */
+    private void discardUnfinishedServices(long jobId) {
+        try {
+            List<sbhackathon.koala.happyMSP.entity.Service> unfinished = serviceRepository.findByBuildJobId(jobId).stream()
+                    .filter(service -> RESUMABLE_STATUSES.contains(service.getStatus()))
+                    .toList();
+            serviceRepository.deleteAll(unfinished);
+            log.info("Discarded {} unfinished services of cancelled job {}", unfinished.size(), jobId);
+        } catch (Exception e) {
+            log.error("Failed to discard services of cancelled job {}: {}", jobId, e.getMessage(), e);
+        }
     }
 
     private void cleanupTempDirectory(String projectId) {
@@ -188,6 +601,7 @@ public class AsyncBuildService {
                 deleteDirectory(tempDir);
                 log.info("Cleaned up temporary directory: {}", tempPath);
             }
+            gitService.releaseClone(tempPath);
         } catch (Exception e) {
             log.warn("Failed to cleanup temporary directory for project {}: {}", projectId, e.getMessage());
         }
@@ -220,13 +634,26 @@ public class AsyncBuildService {
         serviceRepository.save(service);
     }
 
+    // A context that doubled since the previous build usually means a new directory needs a .dockerignore entry
+    private void logContextGrowth(String serviceName, Optional<Ecr> previousImage, Long contextBytes) {
+        Long previousBytes = previousImage.map(Ecr::getContextBytes).orElse(null);
+        if (contextBytes != null && previousBytes != null && previousBytes > 0 && contextBytes > previousBytes * 2) {
+            log.warn("Build context of {} grew from {} to {} bytes since the previous build", serviceName,
+                    previousBytes, contextBytes);
+        }
+    }
+
     @Transactional
-    private void createEcrEntity(sbhackathon.koala.happyMSP.entity.Service service, String imageUri, String imageTag) {
+    private void createEcrEntity(sbhackathon.koala.happyMSP.entity.Service service, String imageUri, String imageTag,
+                                 String contentHash, Long contextBytes, String sourceCommit) {
         try {
             Ecr ecr = Ecr.builder()
                     .name(service.getName())
                     .uri(imageUri)
                     .tag(imageTag)
+                    .contentHash(contentHash)
+                    .contextBytes(contextBytes)
+                    .sourceCommit(sourceCommit)
                     .service(service)
                     .build();
             
@@ -0,0 +1,125 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pulls the base images of a repository's services into the local Docker daemon ahead of the
+ * builds, so docker build finds them locally instead of pulling them serially when it reaches
+ * each FROM line. Pulls are shared: an image already being pulled or pulled recently is not
+ * pulled again, no matter how many services or jobs reference it.
+ */
+@Slf4j
+@Service
+public class BaseImagePrefetcher {
+
+    private static final Duration PULL_TIMEOUT = Duration.ofMinutes(10);
+
+    private final ProcessRunner processRunner;
+    private final ExecutorService pullExecutor;
+
+    @Value("${build.prefetch.enabled:true}")
+    private boolean enabled;
+
+    // A pulled tag (e.g. node:20-alpine) is not pulled again within this window
+    @Value("${build.prefetch.ttl-minutes:10}")
+    private long ttlMinutes;
+
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Instant> pulledAt = new ConcurrentHashMap<>();
+
+    public BaseImagePrefetcher(ProcessRunner processRunner,
+                               @Value("${build.prefetch.concurrency:4}") int concurrency) {
+        this.processRunner = processRunner;
+        this.pullExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "base-image-pull");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts pulling the given images in the background. Failures are only logged; the build
+     * then pulls (or reports) the image itself.
+     *
+     * @return completes when every requested pull finished
+     */
+    public CompletableFuture<Void> prefetch(Collection<String> images) {
+        if (!enabled || images.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<CompletableFuture<Void>> pulls = images.stream()
+                .filter(image -> !isFresh(image))
+                .map(this::pullOnce)
+                .toList();
+
+        if (!pulls.isEmpty()) {
+            log.info("Prefetching {} base images: {}", pulls.size(), images);
+        }
+        return CompletableFuture.allOf(pulls.toArray(new CompletableFuture[0]));
+    }
+
+    // Joins the pull of the image already in flight, or starts one
+    private CompletableFuture<Void> pullOnce(String image) {
+        CompletableFuture<Void> pull;
+        try {
+            pull = inFlight.computeIfAbsent(image, key -> CompletableFuture.runAsync(() -> pull(key), pullExecutor));
+        } catch (RejectedExecutionException e) {
+            log.debug("Not prefetching {}: pull executor is shut down", image);
+            return CompletableFuture.completedFuture(null);
+        }
+        // Registered after computeIfAbsent returned: for a pull that already finished the callback runs
+        // immediately, which inside the mapping function would be a recursive update of inFlight
+        pull.whenComplete((ignored, e) -> inFlight.remove(image, pull));
+        return pull;
+    }
+
+    private boolean isFresh(String image) {
+        Instant pulled = pulledAt.get(image);
+        return pulled != null && pulled.plus(Duration.ofMinutes(ttlMinutes)).isAfter(Instant.now());
+    }
+
+    private void pull(String image) {
+        try {
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("docker", "pull", "--quiet", image))
+                    .mergeStderr(true)
+                    .timeout(PULL_TIMEOUT)
+                    .build());
+
+            if (result.isSuccess()) {
+                pulledAt.put(image, Instant.now());
+                log.info("Prefetched base image {} in {}ms", image, result.getDuration().toMillis());
+            } else {
+                log.warn("Failed to prefetch base image {} (exit code: {}): {}", image, result.getExitCode(),
+                        result.getStdout().trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Failed to prefetch base image {}: {}", image, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        pullExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,131 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildBackend;
+import sbhackathon.koala.happyMSP.build_A.exception.BuildQueueFullException;
+import sbhackathon.koala.happyMSP.build_A.repository.BuildJobRepository;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
+import sbhackathon.koala.happyMSP.entity.BuildJobStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persistent build job queue backed by the build_job table. Requests only enqueue; workers of
+ * any instance claim jobs with a conditional update, so queued jobs survive restarts and build
+ * capacity scales with the number of worker instances.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BuildJobQueue {
+
+    private final BuildJobRepository buildJobRepository;
+
+    @Value("${build.queue.max-queued:50}")
+    private long maxQueued;
+
+    /**
+     * @param superseded true if an already queued job of the repository was moved to the new commit
+     */
+    public record EnqueueResult(BuildJob job, boolean superseded) {}
+
+    /**
+     * Rejects a new deployment request when the backlog is already at capacity.
+     */
+    public void checkAdmission() {
+        long queued = buildJobRepository.countByStatus(BuildJobStatus.QUEUED);
+        if (queued >= maxQueued) {
+            throw new BuildQueueFullException(queued);
+        }
+    }
+
+    /**
+     * Queues a build of the given commit. If the repository already has a queued job, that job is
+     * moved to the newer commit instead (its previous commit is kept, since the intermediate
+     * commit was never built). A running build of the repository is asked to cancel, so only the
+     * newest commit keeps using build capacity; the new job then takes over the cancelled job's
+     * previous commit for the same reason.
+     */
+    @Transactional
+    public EnqueueResult enqueue(int repositoryId, String repositoryUrl, String commitSha, String previousCommit,
+                            BuildBackend buildBackend, int priority) {
+        Optional<BuildJob> running = findRunning(repositoryId);
+        if (buildJobRepository.requestCancel(repositoryId) > 0) {
+            log.info("Cancellation requested for the running build of repository {} (superseded by {})",
+                    repositoryId, commitSha);
+            if (running.isPresent()) {
+                previousCommit = running.get().getPreviousCommit();
+            }
+        }
+
+        Optional<BuildJob> queued = buildJobRepository.findFirstByRepositoryIdAndStatusOrderByIdDesc(
+                repositoryId, BuildJobStatus.QUEUED);
+        if (queued.isPresent()
+                && buildJobRepository.supersede(queued.get().getId(), commitSha, buildBackend, priority) == 1) {
+            log.info("Build job {} superseded with commit {}", queued.get().getId(), commitSha);
+            return new EnqueueResult(buildJobRepository.findById(queued.get().getId()).orElseThrow(), true);
+        }
+
+        BuildJob job = buildJobRepository.save(BuildJob.builder()
+                .repositoryId(repositoryId)
+                .repositoryUrl(repositoryUrl)
+                .commitSha(commitSha)
+                .previousCommit(previousCommit)
+                .buildBackend(buildBackend)
+                .priority(priority)
+                .build());
+        log.info("Build job {} queued for repository {} at {}", job.getId(), repositoryId, commitSha);
+        return new EnqueueResult(job, false);
+    }
+
+    public List<BuildJob> findQueued() {
+        return buildJobRepository.findTop10ByStatusOrderByPriorityDescIdAsc(BuildJobStatus.QUEUED);
+    }
+
+    public Optional<BuildJob> findRunning(int repositoryId) {
+        return buildJobRepository.findFirstByRepositoryIdAndStatusOrderByIdDesc(repositoryId, BuildJobStatus.RUNNING);
+    }
+
+    public Optional<BuildJob> findQueued(int repositoryId) {
+        return buildJobRepository.findFirstByRepositoryIdAndStatusOrderByIdDesc(repositoryId, BuildJobStatus.QUEUED);
+    }
+
+    /**
+     * @return ids of the worker's running jobs that a newer commit asked to cancel
+     */
+    public List<Long> findCancelRequested(String workerId) {
+        return buildJobRepository.findCancelRequested(workerId);
+    }
+
+    /**
+     * @return the claimed job as stored after the claim, or empty if another worker got it first
+     *         or another job of the repository is running
+     */
+    @Transactional
+    public Optional<BuildJob> claim(long jobId, String workerId) {
+        if (buildJobRepository.claim(jobId, workerId, LocalDateTime.now()) != 1) {
+            return Optional.empty();
+        }
+        return buildJobRepository.findById(jobId);
+    }
+
+    @Transactional
+    public void heartbeat(String workerId) {
+        buildJobRepository.heartbeat(workerId, LocalDateTime.now());
+    }
+
+    @Transactional
+    public void complete(long jobId, BuildJobStatus status, String errorMessage) {
+        buildJobRepository.findById(jobId).ifPresent(job -> job.finish(status, errorMessage));
+    }
+
+    public Optional<BuildJob> getJob(long jobId) {
+        return buildJobRepository.findById(jobId);
+    }
+}
@@ -0,0 +1,120 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sbhackathon.koala.happyMSP.build_A.util.CancellationToken;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
+import sbhackathon.koala.happyMSP.entity.BuildJobStatus;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Claims queued build jobs and runs them on buildTaskExecutor, never holding more jobs than it
+ * has worker threads and never starting a job while another build of the same repository runs.
+ * Disable with build.queue.worker-enabled=false on API-only instances.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "build.queue.worker-enabled", havingValue = "true", matchIfMissing = true)
+public class BuildJobWorker {
+
+    private final BuildJobQueue buildJobQueue;
+    private final AsyncBuildService asyncBuildService;
+    private final Executor buildTaskExecutor;
+    private final int concurrency;
+
+    private final String workerId = System.getenv().getOrDefault("HOSTNAME", "local")
+            + "-" + UUID.randomUUID().toString().substring(0, 8);
+    // Jobs running on this worker
+    private final Map<Long, CancellationToken> running = new ConcurrentHashMap<>();
+
+    public BuildJobWorker(BuildJobQueue buildJobQueue, AsyncBuildService asyncBuildService,
+                          @Qualifier("buildTaskExecutor") Executor buildTaskExecutor,
+                          @Value("${build.queue.worker-concurrency:2}") int concurrency) {
+        this.buildJobQueue = buildJobQueue;
+        this.asyncBuildService = asyncBuildService;
+        this.buildTaskExecutor = buildTaskExecutor;
+        this.concurrency = concurrency;
+    }
+
+    @Scheduled(fixedDelayString = "${build.queue.poll-interval-ms:1000}")
+    public void poll() {
+        if (!running.isEmpty()) {
+            cancelSuperseded();
+        }
+        if (running.size() >= concurrency) {
+            return;
+        }
+
+        for (BuildJob candidate : buildJobQueue.findQueued()) {
+            if (running.size() >= concurrency) {
+                return;
+            }
+            // Single flight per repository: the newer job waits until the cancelled one has stopped.
+            // Checked here to skip a pointless claim; the claim itself enforces it.
+            if (buildJobQueue.findRunning(candidate.getRepositoryId()).isPresent()) {
+                continue;
+            }
+
+            Optional<BuildJob> claimed = buildJobQueue.claim(candidate.getId(), workerId);
+            if (claimed.isEmpty()) {
+                continue;
+            }
+
+            CancellationToken cancellation = new CancellationToken();
+            running.put(candidate.getId(), cancellation);
+            try {
+                buildTaskExecutor.execute(() -> run(claimed.get(), cancellation));
+            } catch (RuntimeException e) {
+                running.remove(candidate.getId());
+                buildJobQueue.complete(candidate.getId(), BuildJobStatus.FAILED, e.getMessage());
+                log.error("Failed to dispatch build job {}: {}", candidate.getId(), e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${build.queue.heartbeat-interval-ms:30000}")
+    public void heartbeat() {
+        if (!running.isEmpty()) {
+            buildJobQueue.heartbeat(workerId);
+        }
+    }
+
+    private void cancelSuperseded() {
+        for (Long jobId : buildJobQueue.findCancelRequested(workerId)) {
+            CancellationToken cancellation = running.get(jobId);
+            if (cancellation != null && !cancellation.isCancelled()) {
+                log.info("Cancelling build job {}: superseded by a newer commit", jobId);
+                cancellation.cancel();
+            }
+        }
+    }
+
+    private void run(BuildJob job, CancellationToken cancellation) {
+        log.info("Worker {} running build job {} (repository {}, commit {})",
+                workerId, job.getId(), job.getRepositoryId(), job.getCommitSha());
+        try {
+            boolean completed = asyncBuildService.runDeployment(job.getId(), job.getRepositoryId(), job.getRepositoryUrl(),
+                    job.getCommitSha(), job.getBuildBackend(), cancellation);
+            if (cancellation.isCancelled()) {
+                buildJobQueue.complete(job.getId(), BuildJobStatus.SUPERSEDED, "Cancelled for a newer commit");
+            } else {
+                buildJobQueue.complete(job.getId(), completed ? BuildJobStatus.SUCCEEDED : BuildJobStatus.FAILED,
+                        completed ? null : "Deployment failed, see service status");
+            }
+        } catch (Exception e) {
+            log.error("Build job {} failed: {}", job.getId(), e.getMessage(), e);
+            buildJobQueue.complete(job.getId(), BuildJobStatus.FAILED, e.getMessage());
+        } finally {
+            running.remove(job.getId());
+        }
+    }
+}
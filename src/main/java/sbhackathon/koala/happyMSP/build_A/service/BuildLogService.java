@@ -0,0 +1,123 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.util.BuildLogBuffer;
+import sbhackathon.koala.happyMSP.monitor_B.service.PipelineNotificationService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Owns the log of every image build: lines are streamed to the deployment SSE stream of the
+ * repository while the build runs, the last few KB are kept in memory, and the full log is
+ * spilled to {@code <workspace>/build-logs/<buildId>.log.gz} for later retrieval.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BuildLogService {
+
+    private static final String LOG_DIR = "build-logs";
+    private static final Pattern BUILD_ID_PATTERN = Pattern.compile("^[a-f0-9-]{36}$");
+
+    private final PipelineNotificationService notifier;
+
+    @Value("${build.workspace.path}")
+    private String workspacePath;
+
+    @Value("${build.logs.tail-kb:64}")
+    private int tailKb;
+
+    @Value("${build.logs.retention-hours:72}")
+    private long retentionHours;
+
+    private final Map<String, BuildLogBuffer> activeBuilds = new ConcurrentHashMap<>();
+
+    public BuildLogBuffer open(String repoUrl, String serviceName) {
+        String buildId = UUID.randomUUID().toString();
+        Path spillFile = Paths.get(workspacePath, LOG_DIR, buildId + ".log.gz");
+
+        try {
+            BuildLogBuffer buffer = new BuildLogBuffer(buildId, tailKb * 1024, spillFile,
+                    line -> notifier.publish(repoUrl, "build-log", Map.of(
+                            "buildId", buildId,
+                            "serviceName", serviceName,
+                            "line", line)));
+            activeBuilds.put(buildId, buffer);
+            notifier.publish(repoUrl, "build-started", Map.of("buildId", buildId, "serviceName", serviceName));
+            log.info("Build log opened: {} (service: {})", buildId, serviceName);
+            cleanupExpiredLogs();
+            return buffer;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open build log: " + e.getMessage(), e);
+        }
+    }
+
+    public void close(BuildLogBuffer buffer) {
+        buffer.close();
+        activeBuilds.remove(buffer.getBuildId());
+        log.info("Build log closed: {} ({} lines)", buffer.getBuildId(), buffer.getTotalLines());
+    }
+
+    /**
+     * @return the retained tail of a running build, or empty if the build is not running
+     */
+    public Optional<String> getActiveTail(String buildId) {
+        BuildLogBuffer buffer = activeBuilds.get(buildId);
+        return buffer != null ? Optional.of(buffer.tail()) : Optional.empty();
+    }
+
+    /**
+     * @return a stream over the full decompressed log of a finished build, or empty if unknown
+     */
+    public Optional<InputStream> openFullLog(String buildId) throws IOException {
+        if (!BUILD_ID_PATTERN.matcher(buildId).matches() || activeBuilds.containsKey(buildId)) {
+            return Optional.empty();
+        }
+
+        Path spillFile = Paths.get(workspacePath, LOG_DIR, buildId + ".log.gz");
+        if (!Files.exists(spillFile)) {
+            return Optional.empty();
+        }
+        return Optional.of(new GZIPInputStream(Files.newInputStream(spillFile)));
+    }
+
+    private void cleanupExpiredLogs() {
+        Path logDir = Paths.get(workspacePath, LOG_DIR);
+        Instant cutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+
+        try (Stream<Path> files = Files.list(logDir)) {
+            files.filter(file -> {
+                        try {
+                            return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    })
+                    .forEach(file -> {
+                        try {
+                            Files.deleteIfExists(file);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete expired build log: {}", file);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Failed to clean up build logs: {}", e.getMessage());
+        }
+    }
+}
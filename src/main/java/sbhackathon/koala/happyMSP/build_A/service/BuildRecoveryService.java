@@ -0,0 +1,177 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sbhackathon.koala.happyMSP.build_A.repository.BuildJobRepository;
+import sbhackathon.koala.happyMSP.deployment_CD.repository.ServiceRepository;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
+import sbhackathon.koala.happyMSP.entity.BuildJobStatus;
+import sbhackathon.koala.happyMSP.entity.ServiceStatus;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Reconciles build state after a crash. Jobs whose worker stopped sending heartbeats are put back
+ * in the queue (the pipeline then resumes each interrupted service from its last completed stage)
+ * or failed after too many attempts. Services of such a failed job and services left mid-pipeline
+ * without any job are failed so the monitor stops waiting for them, and workspace directories left
+ * behind by the previous process are removed in the background.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BuildRecoveryService {
+
+    private static final List<String> WORKSPACE_PREFIXES = List.of("project-", "temp-", ".trash-");
+    private static final String OCI_EXPORT_DIR = "oci-export";
+
+    private final BuildJobRepository buildJobRepository;
+    private final ServiceRepository serviceRepository;
+
+    @Value("${build.workspace.path}")
+    private String workspacePath;
+
+    @Value("${build.queue.lease-timeout-ms:120000}")
+    private long leaseTimeoutMs;
+
+    @Value("${build.queue.max-attempts:3}")
+    private int maxAttempts;
+
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        reconcileJobs();
+
+        Thread cleaner = new Thread(this::cleanOrphanedWorkspaces, "workspace-cleanup");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    // Repeated so jobs of an instance that died while this one keeps running are picked up too
+    @Transactional
+    @Scheduled(fixedDelayString = "${build.queue.lease-timeout-ms:120000}",
+            initialDelayString = "${build.queue.lease-timeout-ms:120000}")
+    public void reconcile() {
+        reconcileJobs();
+    }
+
+    private void reconcileJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(leaseTimeoutMs));
+
+        for (BuildJob job : buildJobRepository.findStaleRunning(cutoff)) {
+            if (job.getAttempts() >= maxAttempts) {
+                job.finish(BuildJobStatus.FAILED, "Worker lost " + job.getAttempts() + " times");
+                log.warn("Build job {} failed after {} interrupted attempts", job.getId(), job.getAttempts());
+                // Another job of the repository may be queued or running, so failUntrackedServices would skip these
+                failJobServices(job);
+            } else if (buildJobRepository.requeueStale(job.getId(), cutoff) == 1) {
+                log.info("Build job {} requeued (worker {} lost)", job.getId(), job.getWorkerId());
+            }
+        }
+
+        failUntrackedServices();
+    }
+
+    private void failJobServices(BuildJob job) {
+        for (sbhackathon.koala.happyMSP.entity.Service service : serviceRepository.findByBuildJobId(job.getId())) {
+            if (AsyncBuildService.RESUMABLE_STATUSES.contains(service.getStatus())) {
+                log.warn("Service {} of failed build job {} stuck in {}, marking FAILED", service.getName(),
+                        job.getId(), service.getStatus());
+                service.updateStatus(ServiceStatus.FAILED);
+            }
+        }
+    }
+
+    private void failUntrackedServices() {
+        EnumSet<BuildJobStatus> activeStatuses = EnumSet.of(BuildJobStatus.QUEUED, BuildJobStatus.RUNNING);
+
+        for (sbhackathon.koala.happyMSP.entity.Service service : serviceRepository.findByStatusIn(AsyncBuildService.RESUMABLE_STATUSES)) {
+            int repositoryId = service.getRepository().getId();
+            if (!buildJobRepository.existsByRepositoryIdAndStatusIn(repositoryId, activeStatuses)) {
+                log.warn("Service {} (repository {}) stuck in {} without a build job, marking FAILED",
+                        service.getName(), repositoryId, service.getStatus());
+                service.updateStatus(ServiceStatus.FAILED);
+            }
+        }
+    }
+
+    /**
+     * Removes clone and export directories that predate this process. They are renamed away
+     * first so a job that recreates the same directory meanwhile is never affected.
+     */
+    private void cleanOrphanedWorkspaces() {
+        Instant processStart = Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime());
+        Path workspace = Paths.get(workspacePath);
+        int removed = 0;
+
+        try (Stream<Path> entries = Files.list(workspace)) {
+            for (Path entry : entries.toList()) {
+                String name = entry.getFileName().toString();
+                if (WORKSPACE_PREFIXES.stream().anyMatch(name::startsWith) && removeIfOlder(entry, processStart)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan workspace {}: {}", workspace, e.getMessage());
+        }
+
+        Path exportDir = workspace.resolve(OCI_EXPORT_DIR);
+        if (Files.isDirectory(exportDir)) {
+            try (Stream<Path> entries = Files.list(exportDir)) {
+                for (Path entry : entries.toList()) {
+                    if (removeIfOlder(entry, processStart)) {
+                        removed++;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to scan export directory {}: {}", exportDir, e.getMessage());
+            }
+        }
+
+        log.info("Workspace cleanup finished: {} orphaned directories removed", removed);
+    }
+
+    private boolean removeIfOlder(Path entry, Instant cutoff) {
+        try {
+            if (!Files.getLastModifiedTime(entry).toInstant().isBefore(cutoff)) {
+                return false;
+            }
+
+            Path trash = entry.resolveSibling(".trash-" + UUID.randomUUID());
+            Files.move(entry, trash);
+            try (Stream<Path> paths = Files.walk(trash)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        Files.delete(path);
+                    } catch (IOException e) {
+                        log.warn("Failed to delete: {}", path);
+                    }
+                });
+            }
+            log.info("Removed orphaned workspace: {}", entry);
+            return true;
+        } catch (IOException e) {
+            // Already removed or recreated by a running job
+            log.debug("Skipped workspace entry {}: {}", entry, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -8,8 +8,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import sbhackathon.koala.happyMSP.build_A.dto.*;
+import sbhackathon.koala.happyMSP.build_A.exception.BuildQueueFullException;
 import sbhackathon.koala.happyMSP.build_A.repository.RepoRepository;
 import sbhackathon.koala.happyMSP.deployment_CD.repository.ServiceRepository;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
 import sbhackathon.koala.happyMSP.entity.Repository;
 import sbhackathon.koala.happyMSP.entity.ServiceStatus;
 
@@ -17,6 +19,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -25,12 +28,17 @@ import java.util.Optional;
 public class BuildService {
 
     private final GitService gitService;
+    private final RemoteHeadResolver remoteHeadResolver;
     private final ServiceScanner serviceScanner;
+    private final BaseImagePrefetcher baseImagePrefetcher;
 
-    private final AsyncBuildService asyncBuildService;
+    private final BuildJobQueue buildJobQueue;
     private final RepoRepository repositoryRepo;
     private final ServiceRepository serviceRepository;
 
+    // commitId is the full SHA, which the build job fetches its commit by
+    private record ScannedHead(String commitId, ServiceScanResultDto scanResult) {}
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -40,11 +48,14 @@ public class BuildService {
     @Value("${aws.ecr.registry.uri}")
     private String ecrRegistryUri;
 
+    @Value("${build.docker.backend:CLASSIC}")
+    private BuildBackend defaultBuildBackend;
+
     @Transactional(readOnly = true)
     public GetRepositoryResponseDto getRepositoryStatus(String repoUrl) {
         try {
             // Normalize URL
-            String normalizedUrl = gitService.normalizeGitUrl(repoUrl);
+            String normalizedUrl = GitService.normalizeGitUrl(repoUrl);
 
             // Find repository by normalized URL
             Optional<Repository> repositoryOpt = repositoryRepo.findByUri(normalizedUrl);
@@ -66,7 +77,12 @@ public class BuildService {
                 state = allDeployed ? RepositoryState.DEPLOYED : RepositoryState.DEPLOYING;
             }
 
-            return GetRepositoryResponseDto.of(state, repositoryDto);
+            // Commit actually being built, which differs from latestCommit while a superseded build winds down
+            // Jobs hold the full SHA; shown in the same 7-character form as latestCommit
+            String buildingCommit = buildJobQueue.findRunning(repository.getId()).map(BuildService::shortCommit).orElse(null);
+            String queuedCommit = buildJobQueue.findQueued(repository.getId()).map(BuildService::shortCommit).orElse(null);
+
+            return GetRepositoryResponseDto.of(state, repositoryDto, buildingCommit, queuedCommit);
         } catch (Exception e) {
             log.error("Error getting repository status for URL {}: {}", repoUrl, e.getMessage());
             throw new RuntimeException("Failed to get repository status", e);
@@ -76,17 +92,34 @@ public class BuildService {
     @Transactional
     public PostRepositoryResponseDto requestDeployment(PostRepositoryRequestDto request) {
         String tempProjectId = "temp-" + System.currentTimeMillis();
+
         try {
             // Normalize GitHub URL
-            String normalizedUrl = gitService.normalizeGitUrl(request.getRepositoryUrl());
+            String normalizedUrl = GitService.normalizeGitUrl(request.getRepositoryUrl());
+
+            // Fast path: compare the remote HEAD with the deployed commit without cloning
+            Optional<Repository> deployedOpt = repositoryRepo.findByUri(normalizedUrl);
+            if (deployedOpt.isPresent() && deployedOpt.get().getLatestCommit() != null) {
+                String remoteHead = remoteHeadResolver.resolveShortHead(request.getRepositoryUrl());
+                if (deployedOpt.get().getLatestCommit().equals(remoteHead)) {
+                    log.info("Repository {} already deployed at {}, skipping clone", normalizedUrl, remoteHead);
+                    return PostRepositoryResponseDto.alreadyDeployed(RepositoryDto.from(deployedOpt.get()));
+                }
+            }
+
+            // Admission control before any clone work, but after the no-op fast path; surfaces as 429 to the caller
+            buildJobQueue.checkAdmission();
 
-            // Clone temporarily to get latest commit
-            CloneResultDto cloneResult = gitService.cloneRepository(request.getRepositoryUrl(), tempProjectId);
-            String latestCommit = cloneResult.getGitSha();
+            // Read the latest commit and scan its services from Git objects; nothing is checked out
+            ScannedHead head = gitService.readHead(request.getRepositoryUrl(), tempProjectId,
+                    (gitRepository, commit) -> new ScannedHead(commit.name(),
+                            serviceScanner.scanServices(gitRepository, commit.getTree())));
+            String latestCommit = head.commitId().substring(0, 7);
 
             // Find repository by normalized URL
             Optional<Repository> repositoryOpt = repositoryRepo.findByUri(normalizedUrl);
             Repository repository;
+            String previousCommit = null;
 
             if (repositoryOpt.isPresent()) {
                 repository = repositoryOpt.get();
@@ -96,6 +129,7 @@ public class BuildService {
                     return PostRepositoryResponseDto.alreadyDeployed(repositoryDto);
                 }
 
+                previousCommit = repository.getLatestCommit();
                 repository.updateLatestCommit(latestCommit);
             } else {
                 repository = Repository.builder()
@@ -105,10 +139,31 @@ public class BuildService {
             }
 
             repositoryRepo.save(repository);
+            // The deployed commit moved; don't let a head cached before this scan answer the next fast path
+            remoteHeadResolver.invalidate(request.getRepositoryUrl());
+
+            // Queue the build; a job of this repository that is still queued is moved to the new commit
+            BuildBackend buildBackend = request.getBuildBackend() != null ? request.getBuildBackend() : defaultBuildBackend;
+            int priority = request.getPriority() != null ? request.getPriority() : 0;
+            BuildJobQueue.EnqueueResult enqueued = buildJobQueue.enqueue(repository.getId(), request.getRepositoryUrl(),
+                    head.commitId(), previousCommit, buildBackend, priority);
+            if (enqueued.superseded()) {
+                // Services registered for the superseded commit never started; replace them with this scan
+                List<sbhackathon.koala.happyMSP.entity.Service> stalePending = serviceRepository.findByBuildJobId(enqueued.job().getId());
+                serviceRepository.deleteAll(stalePending);
+                log.info("Removed {} pending services of superseded build job {}", stalePending.size(),
+                        enqueued.job().getId());
+            }
             
-            // Scan services and create Service entities immediately
-            ServiceScanResultDto scanResult = serviceScanner.scanServices(cloneResult.getRepoPath());
+            // Create Service entities for the scanned services immediately
+            ServiceScanResultDto scanResult = head.scanResult();
             log.info("Service scan completed. Found {} services", scanResult.getServices().size());
+
+            // Base images are pulled while the job waits in the queue and the worker clones again.
+            // BuildKit builds run in their own builder container and do not use the daemon's images.
+            if (buildBackend == BuildBackend.CLASSIC) {
+                baseImagePrefetcher.prefetch(scanResult.getBaseImages());
+            }
             
             // Create Service entities with PENDING status
             for (ServiceScanResultDto.ServiceInfo serviceInfo : scanResult.getServices()) {
@@ -120,6 +175,7 @@ public class BuildService {
                         .repository(repository)
                         .portNumber(serviceInfo.getPortNumber())
                         .status(ServiceStatus.PENDING)
+                        .buildJobId(enqueued.job().getId())
                         .build();
 
                 serviceRepository.save(serviceEntity);
@@ -130,21 +186,19 @@ public class BuildService {
             entityManager.flush(); // Ensure all changes are persisted
             entityManager.refresh(repository); // Refresh to get updated services collection
 
-            // Start async deployment for Docker build and ECR push (fire-and-forget)
-            log.info("Triggering async deployment for repository: {} (background process)", repository.getId());
-            asyncBuildService.startAsyncDeployment(repository.getId(), request.getRepositoryUrl(), latestCommit);
-
-            // Return immediate response without waiting for async deployment
+            // Return immediately; a build worker claims the job (Docker build and ECR push)
             RepositoryDto repositoryDto = RepositoryDto.from(repository);
-            log.info("Returning immediate response for repository {} with {} services in PENDING status",
-                    repository.getId(), repository.getServices().size());
-            return PostRepositoryResponseDto.success(repositoryDto);
+            log.info("Returning immediate response for repository {} with {} services in PENDING status (job {})",
+                    repository.getId(), repository.getServices().size(), enqueued.job().getId());
+            return PostRepositoryResponseDto.success(repositoryDto, enqueued.job().getId());
 
+        } catch (BuildQueueFullException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to start deployment for repository: {}", e.getMessage());
             throw new RuntimeException("Failed to start deployment", e);
         } finally {
-            // Clean up temporary clone directory
+            // Clean up the temporary bare clone (SHALLOW mode only)
             cleanupTempDirectory(tempProjectId);
         }
     }
@@ -175,4 +229,9 @@ public class BuildService {
                     });
         }
     }
+
+    private static String shortCommit(BuildJob job) {
+        String commitSha = job.getCommitSha();
+        return commitSha.length() > 7 ? commitSha.substring(0, 7) : commitSha;
+    }
 }
\ No newline at end of file
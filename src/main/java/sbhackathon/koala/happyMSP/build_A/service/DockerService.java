@@ -1,60 +1,181 @@
 package sbhackathon.koala.happyMSP.build_A.service;
 
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.config.BuildContextSource;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildBackend;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildGraphDto;
 import sbhackathon.koala.happyMSP.build_A.dto.BuildResultDto;
+import sbhackathon.koala.happyMSP.build_A.util.BuildLogBuffer;
+import sbhackathon.koala.happyMSP.build_A.util.CancellationToken;
+import sbhackathon.koala.happyMSP.build_A.util.ContextSummary;
+import sbhackathon.koala.happyMSP.build_A.util.DockerIgnoreMatcher;
+import sbhackathon.koala.happyMSP.build_A.util.GitContextArchive;
+import sbhackathon.koala.happyMSP.build_A.util.WorktreeContext;
+import sbhackathon.koala.happyMSP.infra.docker.DockerEngineClient;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class DockerService {
 
-    public BuildResultDto buildImage(String serviceName, String contextPath, String imageTag) {
-        try {
-            log.info("Building Docker image for service: {} with tag: {}", serviceName, imageTag);
-            
-            Path contextDir = Paths.get(contextPath);
-            if (!Files.exists(contextDir) || !Files.isDirectory(contextDir)) {
-                throw new RuntimeException("Context directory does not exist: " + contextPath);
-            }
+    private static final String CACHE_TAG = "buildcache";
+    // Local tag of shared stages built with the classic backend, keeps them from being pruned as dangling
+    private static final String SHARED_STAGE_REPOSITORY = "happymsp-shared-stage";
+    private static final Duration INSPECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final String SERVICES_DIR = "services";
+
+    private final ProcessRunner processRunner;
+    private final DockerEngineClient dockerEngineClient;
+
+    // Talk to the daemon over the Engine API socket; the docker CLI is used when disabled or not mounted
+    @Value("${build.docker.engine-api:true}")
+    private boolean engineApiEnabled;
+
+    @Value("${build.docker.build-timeout-minutes:30}")
+    private long buildTimeoutMinutes;
+
+    @Value("${build.docker.context-source:GIT}")
+    private BuildContextSource contextSource;
+
+    // Applied to services without their own .dockerignore; set empty to send such contexts unfiltered
+    @Value("${build.context.default-ignore:.git,**/node_modules,**/__pycache__,**/*.pyc,**/.venv,**/.pytest_cache,**/coverage,**/*.log,**/.DS_Store,.idea,.vscode}")
+    private List<String> defaultIgnore;
+
+    // Contexts larger than this are logged as a warning with their largest entries
+    @Value("${build.context.warn-size-mb:100}")
+    private long contextWarnSizeMb;
+
+    @Value("${build.docker.buildx-builder:happymsp}")
+    private String buildxBuilder;
+
+    // Registry holding per-service BuildKit cache refs; point at a local registry:2 for testing
+    @Value("${build.docker.cache-registry:${aws.ecr.registry.uri}}")
+    private String cacheRegistry;
+
+    @Value("${build.docker.cache-registry-insecure:false}")
+    private boolean cacheRegistryInsecure;
 
-            Path dockerfile = contextDir.resolve("Dockerfile");
-            if (!Files.exists(dockerfile)) {
-                throw new RuntimeException("Dockerfile not found in: " + contextPath);
+    private volatile boolean builderReady = false;
+
+    /**
+     * Builds services/&lt;serviceName&gt; of a repository cloned by {@link GitService#cloneRepository}.
+     * With the GIT context source the context tar is generated from the commit's objects and
+     * piped to docker build -, otherwise docker build . runs in the checked-out directory.
+     *
+     * @param buildContexts images to use for references in the Dockerfile (FROM base), keyed by
+     *                      the reference as written; passed as named build contexts
+     */
+    public BuildResultDto buildImage(String serviceName, String repoPath, String imageTag, BuildBackend backend,
+                                     Map<String, String> buildContexts, BuildLogBuffer buildLog,
+                                     CancellationToken cancellation) {
+        String contextPath = SERVICES_DIR + "/" + serviceName;
+        try (Repository repository = contextSource == BuildContextSource.GIT ? Git.open(new File(repoPath)).getRepository() : null) {
+            log.info("Building Docker image for service: {} with tag: {} (backend: {}, context: {})", serviceName,
+                    imageTag, backend, contextSource);
+
+            Path contextDir = Paths.get(repoPath, contextPath);
+            ObjectId contextTree = null;
+            if (repository != null) {
+                contextTree = resolveContextTree(repository, contextPath);
+            } else {
+                if (!Files.exists(contextDir) || !Files.isDirectory(contextDir)) {
+                    throw new RuntimeException("Context directory does not exist: " + contextDir);
+                }
+
+                Path dockerfile = contextDir.resolve("Dockerfile");
+                if (!Files.exists(dockerfile)) {
+                    throw new RuntimeException("Dockerfile not found in: " + contextDir);
+                }
             }
 
-            StringBuilder buildLog = new StringBuilder();
+            DockerIgnoreMatcher defaultIgnoreMatcher = DockerIgnoreMatcher.of(defaultIgnore);
+            ContextSummary context = repository != null
+                    ? GitContextArchive.measure(repository, contextTree, defaultIgnoreMatcher)
+                    : WorktreeContext.measure(contextDir, WorktreeContext.synthesizeDockerIgnore(contextDir, defaultIgnore));
+            reportContext(serviceName, context, buildLog);
 
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "build", "-t", imageTag, "."
-            );
-            processBuilder.directory(contextDir.toFile());
-            processBuilder.redirectErrorStream(true);
+            if (buildsWithEngineApi(backend, !buildContexts.isEmpty())) {
+                return buildWithEngineApi(serviceName, repository, contextTree, defaultIgnoreMatcher, context, imageTag,
+                        buildLog, cancellation);
+            }
 
-            Process process = processBuilder.start();
+            List<String> command = new ArrayList<>(backend == BuildBackend.BUILDKIT
+                    ? buildxCommand(imageTag)
+                    : List.of("docker", "build", "-t", imageTag));
+            buildContexts.forEach((reference, image) ->
+                    command.addAll(List.of("--build-context", reference + "=docker-image://" + image)));
+            command.add(repository != null ? "-" : ".");
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    buildLog.append(line).append("\n");
-                    log.debug("Build output: {}", line);
+            ObjectId streamedTree = contextTree;
+            ProcessResult result;
+            Process[] started = new Process[1];
+            try {
+                result = processRunner.run(ProcessSpec.builder()
+                        .command(command)
+                        .directory(repository != null ? null : contextDir)
+                        .stdinWriter(repository != null
+                                ? stdin -> GitContextArchive.write(repository, streamedTree, defaultIgnoreMatcher, stdin)
+                                : null)
+                        .mergeStderr(true)
+                        .timeout(Duration.ofMinutes(buildTimeoutMinutes))
+                        .stdoutHandler(line -> {
+                            buildLog.append(line);
+                            log.debug("Build output: {}", line);
+                        })
+                        // Killing the docker CLI also makes the daemon abort the build
+                        .onStart(process -> {
+                            started[0] = process;
+                            cancellation.register(process);
+                        })
+                        .commandType(backend == BuildBackend.BUILDKIT ? "docker buildx build" : "docker build")
+                        .build());
+            } finally {
+                if (started[0] != null) {
+                    cancellation.unregister(started[0]);
                 }
             }
 
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0) {
+            int exitCode = result.getExitCode();
+            if (result.isTimedOut()) {
+                buildLog.append("Build timed out after " + buildTimeoutMinutes + " minutes");
+            }
+
+            if (result.isSuccess()) {
                 log.info("Docker build completed successfully for service: {}", serviceName);
                 return BuildResultDto.builder()
                         .serviceName(serviceName)
-                        .imageId(imageTag)
+                        .imageId(resolveImageId(imageTag))
                         .imageTag(imageTag)
                         .success(true)
-                        .buildLog(buildLog.toString())
+                        .buildId(buildLog.getBuildId())
+                        .buildLog(buildLog.tail())
+                        .contextBytes(context.bytes())
                         .build();
             } else {
                 log.error("Docker build failed for service: {} with exit code: {}", serviceName, exitCode);
@@ -63,7 +184,9 @@ public class DockerService {
                         .imageId(null)
                         .imageTag(imageTag)
                         .success(false)
-                        .buildLog("Build failed with exit code: " + exitCode + "\n" + buildLog.toString())
+                        .buildId(buildLog.getBuildId())
+                        .buildLog("Build failed with exit code: " + exitCode + "\n" + buildLog.tail())
+                        .contextBytes(context.bytes())
                         .build();
             }
 
@@ -74,8 +197,304 @@ public class DockerService {
                     .imageId(null)
                     .imageTag(imageTag)
                     .success(false)
+                    .buildId(buildLog.getBuildId())
                     .buildLog("Build failed: " + e.getMessage())
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds through the Engine API: the context tar is streamed over the daemon socket and the
+     * JSON progress stream gives the build steps and the id of the built image.
+     */
+    private BuildResultDto buildWithEngineApi(String serviceName, Repository repository, ObjectId contextTree,
+                                              DockerIgnoreMatcher defaultIgnore, ContextSummary context, String imageTag,
+                                              BuildLogBuffer buildLog, CancellationToken cancellation) {
+        Closeable[] connection = new Closeable[1];
+        try {
+            String imageId = dockerEngineClient.build(Map.of("t", imageTag),
+                    body -> GitContextArchive.write(repository, contextTree, defaultIgnore, body),
+                    Duration.ofMinutes(buildTimeoutMinutes),
+                    opened -> {
+                        connection[0] = opened;
+                        cancellation.register(opened);
+                    },
+                    event -> {
+                        if (event.step() != null) {
+                            log.debug("Build of {}: step {}/{}", serviceName, event.step(), event.totalSteps());
+                        }
+                        if (event.stream() != null) {
+                            event.stream().lines().forEach(buildLog::append);
+                        } else if (event.error() != null) {
+                            buildLog.append(event.error());
+                        } else if (event.status() != null) {
+                            // Base image pulls
+                            buildLog.append(event.id() != null ? event.id() + ": " + event.status() : event.status());
+                        }
+                    });
+
+            log.info("Docker build completed successfully for service: {} (image {})", serviceName, imageId);
+            return BuildResultDto.builder()
+                    .serviceName(serviceName)
+                    .imageId(imageId)
+                    .imageTag(imageTag)
+                    .success(true)
+                    .buildId(buildLog.getBuildId())
+                    .buildLog(buildLog.tail())
+                    .contextBytes(context.bytes())
+                    .build();
+        } catch (IOException e) {
+            log.error("Docker build failed for service: {}: {}", serviceName, e.getMessage());
+            return BuildResultDto.builder()
+                    .serviceName(serviceName)
+                    .imageId(null)
+                    .imageTag(imageTag)
+                    .success(false)
+                    .buildId(buildLog.getBuildId())
+                    .buildLog("Build failed: " + e.getMessage() + "\n" + buildLog.tail())
+                    .contextBytes(context.bytes())
+                    .build();
+        } finally {
+            if (connection[0] != null) {
+                cancellation.unregister(connection[0]);
+            }
+        }
+    }
+
+    private void reportContext(String serviceName, ContextSummary context, BuildLogBuffer buildLog) {
+        buildLog.append("Build context: " + context.describe());
+        if (context.bytes() > contextWarnSizeMb * 1024 * 1024) {
+            log.warn("Build context of {} is {}; add a .dockerignore for the largest entries", serviceName,
+                    context.describe());
+        } else {
+            log.info("Build context of {}: {}", serviceName, context.describe());
+        }
+    }
+
+    // The image id (sha256:...) of a CLI build, or the tag when it cannot be inspected
+    private String resolveImageId(String imageTag) {
+        if (!useEngineApi()) {
+            return imageTag;
+        }
+        try {
+            return dockerEngineClient.inspectImage(imageTag)
+                    .map(DockerEngineClient.ImageInfo::id)
+                    .orElse(imageTag);
+        } catch (IOException e) {
+            log.warn("Failed to inspect image {}: {}", imageTag, e.getMessage());
+            return imageTag;
+        }
+    }
+
+    private boolean useEngineApi() {
+        return engineApiEnabled && dockerEngineClient.isAvailable();
+    }
+
+    /**
+     * Whether {@link #buildImage} builds through the Engine API rather than the CLI. Named build
+     * contexts and BuildKit builds need a BuildKit session, which only the CLI provides.
+     */
+    private boolean buildsWithEngineApi(BuildBackend backend, boolean withBuildContexts) {
+        return contextSource == BuildContextSource.GIT && backend == BuildBackend.CLASSIC && !withBuildContexts
+                && useEngineApi();
+    }
+
+    private ObjectId resolveContextTree(Repository repository, String contextPath) throws IOException {
+        ObjectId headTree = repository.resolve(Constants.HEAD + "^{tree}");
+        if (headTree == null) {
+            throw new RuntimeException("HEAD not found in " + repository.getDirectory());
+        }
+
+        try (TreeWalk contextWalk = TreeWalk.forPath(repository, contextPath, headTree)) {
+            if (contextWalk == null || contextWalk.getFileMode(0) != FileMode.TREE) {
+                throw new RuntimeException("Context directory does not exist: " + contextPath);
+            }
+            ObjectId contextTree = contextWalk.getObjectId(0);
+            try (TreeWalk dockerfileWalk = TreeWalk.forPath(repository, "Dockerfile", contextTree)) {
+                if (dockerfileWalk == null) {
+                    throw new RuntimeException("Dockerfile not found in: " + contextPath);
+                }
+            }
+            return contextTree;
+        }
+    }
+
+    /**
+     * @return true if the image tag exists in the local Docker daemon
+     */
+    public boolean imageExists(String imageTag) {
+        try {
+            if (useEngineApi()) {
+                return dockerEngineClient.inspectImage(imageTag).isPresent();
+            }
+            return processRunner.run(ProcessSpec.builder()
+                    .command(List.of("docker", "image", "inspect", imageTag))
+                    .timeout(INSPECT_TIMEOUT)
+                    .build()).isSuccess();
+        } catch (IOException e) {
+            log.warn("Failed to inspect image {}: {}", imageTag, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return the registry ref the BuildKit layer cache of the given image is stored under
+     */
+    public String cacheRef(String imageTag) {
+        String repoName = imageTag.split(":")[0];
+        return String.format("%s/%s:%s", cacheRegistry, repoName, CACHE_TAG);
+    }
+
+    private List<String> buildxCommand(String imageTag) throws IOException, InterruptedException {
+        ensureBuilder();
+
+        String cacheRef = cacheRef(imageTag);
+        String insecure = cacheRegistryInsecure ? ",registry.insecure=true" : "";
+
+        List<String> command = new ArrayList<>(List.of("docker", "buildx", "build", "--builder", buildxBuilder));
+        command.addAll(List.of("-t", imageTag));
+        command.addAll(List.of("--cache-from", "type=registry,ref=" + cacheRef + insecure));
+        // image-manifest/oci-mediatypes are required by ECR; ignore-error keeps a cache export failure from failing the build
+        command.addAll(List.of("--cache-to", "type=registry,ref=" + cacheRef + ",mode=max,image-manifest=true,oci-mediatypes=true,ignore-error=true" + insecure));
+        // Load the result into the local daemon so the push stage can tag and push it
+        command.add("--load");
+        return command;
+    }
+
+    /**
+     * Builds a stage several services' Dockerfiles share (see {@link BuildGraphDto.SharedStage})
+     * from a Dockerfile on stdin without a build context. The services' own builds then find
+     * these layers in the builder's cache instead of each running the same instructions.
+     *
+     * @return false if the stage was not built, including when its services build with different
+     *         builders and so could not share its layers
+     */
+    public boolean buildSharedStage(BuildGraphDto graph, BuildGraphDto.SharedStage stage, BuildBackend backend,
+                                    CancellationToken cancellation) {
+        // A service is built with named build contexts exactly when it depends on other services
+        Set<Boolean> engineApi = stage.getServices().stream()
+                .map(service -> buildsWithEngineApi(backend, !graph.dependenciesOf(service).isEmpty()))
+                .collect(Collectors.toSet());
+        if (engineApi.size() > 1) {
+            log.info("Shared stage {} skipped: services {} build with different builders", stage.getId(),
+                    stage.getServices());
+            return false;
+        }
+        // Same builder as the services' builds, otherwise they would not find the stage's layers
+        if (engineApi.contains(true)) {
+            return buildSharedStageWithEngineApi(stage, cancellation);
+        }
+
+        List<String> command = backend == BuildBackend.BUILDKIT
+                ? List.of("docker", "buildx", "build", "--builder", buildxBuilder, "-")
+                : List.of("docker", "build", "-t", SHARED_STAGE_REPOSITORY + ":" + stage.getId(), "-");
+
+        try {
+            if (backend == BuildBackend.BUILDKIT) {
+                ensureBuilder();
+            }
+
+            Process[] started = new Process[1];
+            ProcessResult result;
+            try {
+                result = processRunner.run(ProcessSpec.builder()
+                        .command(command)
+                        .stdin(stage.getDockerfile())
+                        .mergeStderr(true)
+                        .timeout(Duration.ofMinutes(buildTimeoutMinutes))
+                        .onStart(process -> {
+                            started[0] = process;
+                            cancellation.register(process);
+                        })
+                        .commandType("docker build (shared stage)")
+                        .build());
+            } finally {
+                if (started[0] != null) {
+                    cancellation.unregister(started[0]);
+                }
+            }
+
+            if (result.isSuccess()) {
+                log.info("Shared stage {} built for services {} in {}ms", stage.getId(), stage.getServices(),
+                        result.getDuration().toMillis());
+                return true;
+            }
+            log.warn("Shared stage {} failed (exit code: {}), services build it themselves:\n{}", stage.getId(),
+                    result.getExitCode(), result.getStdout());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            log.warn("Shared stage {} failed: {}", stage.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean buildSharedStageWithEngineApi(BuildGraphDto.SharedStage stage, CancellationToken cancellation) {
+        byte[] dockerfile = stage.getDockerfile().getBytes(StandardCharsets.UTF_8);
+        Closeable[] connection = new Closeable[1];
+        long start = System.nanoTime();
+        try {
+            dockerEngineClient.build(Map.of("t", SHARED_STAGE_REPOSITORY + ":" + stage.getId()),
+                    body -> {
+                        // A context holding only the Dockerfile
+                        TarArchiveOutputStream tar = new TarArchiveOutputStream(body);
+                        TarArchiveEntry entry = new TarArchiveEntry("Dockerfile");
+                        entry.setSize(dockerfile.length);
+                        tar.putArchiveEntry(entry);
+                        tar.write(dockerfile);
+                        tar.closeArchiveEntry();
+                        tar.finish();
+                    },
+                    Duration.ofMinutes(buildTimeoutMinutes),
+                    opened -> {
+                        connection[0] = opened;
+                        cancellation.register(opened);
+                    },
+                    event -> { });
+            log.info("Shared stage {} built for services {} in {}ms", stage.getId(), stage.getServices(),
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+            return true;
+        } catch (IOException e) {
+            log.warn("Shared stage {} failed, services build it themselves: {}", stage.getId(), e.getMessage());
+            return false;
+        } finally {
+            if (connection[0] != null) {
+                cancellation.unregister(connection[0]);
+            }
+        }
+    }
+
+    /**
+     * Registry cache export is not supported by the default docker driver, so builds run on a
+     * docker-container builder which is created on first use.
+     */
+    private synchronized void ensureBuilder() throws IOException, InterruptedException {
+        if (builderReady) {
+            return;
+        }
+
+        ProcessResult inspect = processRunner.run(ProcessSpec.builder()
+                .command(List.of("docker", "buildx", "inspect", buildxBuilder))
+                .timeout(INSPECT_TIMEOUT)
+                .build());
+        if (!inspect.isSuccess()) {
+            log.info("Creating buildx builder: {}", buildxBuilder);
+            ProcessResult create = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("docker", "buildx", "create", "--name", buildxBuilder,
+                            "--driver", "docker-container", "--driver-opt", "network=host"))
+                    .mergeStderr(true)
+                    .timeout(INSPECT_TIMEOUT)
+                    .build());
+            if (!create.isSuccess()) {
+                throw new RuntimeException("Failed to create buildx builder with exit code: " + create.getExitCode()
+                        + "\n" + create.getStdout());
+            }
+        }
+        builderReady = true;
+    }
+}
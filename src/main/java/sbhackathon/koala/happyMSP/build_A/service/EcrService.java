@@ -3,26 +3,71 @@ package sbhackathon.koala.happyMSP.build_A.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.config.PushMode;
 import sbhackathon.koala.happyMSP.build_A.dto.PushResultDto;
+import sbhackathon.koala.happyMSP.infra.docker.DockerEngineClient;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ecr.EcrClient;
 import software.amazon.awssdk.services.ecr.model.*;
 
 import javax.annotation.PreDestroy;
 import java.io.*;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 public class EcrService {
 
+    private static final Pattern PUSH_DIGEST_PATTERN = Pattern.compile("digest: (sha256:[a-f0-9]{64})");
+
     private final EcrClient ecrClient;
+    private final OciPushService ociPushService;
+    private final ProcessRunner processRunner;
+    private final DockerEngineClient dockerEngineClient;
     
     @Value("${aws.ecr.region}")
     private String region;
 
-    public EcrService(@Value("${aws.ecr.region}") String region) {
+    // Tokens are valid for 12 hours; log in again this long before the token expires
+    @Value("${aws.ecr.token-refresh-margin-minutes:30}")
+    private long tokenRefreshMarginMinutes;
+
+    // DOCKER: docker tag/login/push, OCI: daemonless push over the registry API
+    @Value("${build.push.mode:DOCKER}")
+    private PushMode pushMode;
+
+    @Value("${build.push.timeout-minutes:20}")
+    private long pushTimeoutMinutes;
+
+    // DOCKER mode tags and pushes over the Engine API socket, with the registry token passed per request
+    @Value("${build.docker.engine-api:true}")
+    private boolean engineApiEnabled;
+
+    private record RegistryToken(String authorizationToken, Instant expiresAt) {}
+
+    private final Map<String, RegistryToken> registryTokens = new ConcurrentHashMap<>();
+    // Registry -> expiry of the token the docker daemon is logged in with
+    private final Map<String, Instant> dockerLogins = new ConcurrentHashMap<>();
+    private final Map<String, Object> loginLocks = new ConcurrentHashMap<>();
+    private final Set<String> knownRepositories = ConcurrentHashMap.newKeySet();
+
+    public EcrService(@Value("${aws.ecr.region}") String region, OciPushService ociPushService,
+                      ProcessRunner processRunner, DockerEngineClient dockerEngineClient) {
         this.region = region;
+        this.ociPushService = ociPushService;
+        this.processRunner = processRunner;
+        this.dockerEngineClient = dockerEngineClient;
         this.ecrClient = EcrClient.builder()
                 .region(Region.of(region))
                 .build();
@@ -30,25 +75,39 @@ public class EcrService {
 
     public PushResultDto pushImage(String serviceName, String localImageTag, String registryUri) {
         try {
-            String repoName = localImageTag.split(":")[0];
+            String[] tagParts = localImageTag.split(":");
+            String repoName = tagParts[0];
 
             ensureRepositoryExists(repoName);
             
-            String authToken = getEcrAuthToken();
-            
             String fullImageUri = String.format("%s/%s", registryUri, localImageTag);
+            String digest;
             
-            tagImage(localImageTag, fullImageUri);
-            
-            loginToEcr(authToken, registryUri);
-            
-            pushToEcr(fullImageUri);
+            if (pushMode == PushMode.OCI) {
+                String authorization = "Basic " + getRegistryToken(registryUri).authorizationToken();
+                digest = ociPushService.push(localImageTag, registryUri, repoName, tagParts[1], authorization);
+            } else if (useEngineApi()) {
+                digest = pushWithEngineApi(localImageTag, registryUri, repoName, tagParts[1]);
+            } else {
+                tagImage(localImageTag, fullImageUri);
+                
+                ensureLoggedIn(registryUri);
+                
+                try {
+                    digest = pushToEcr(fullImageUri);
+                } catch (RuntimeException e) {
+                    // The daemon may have lost the credentials (logout, restart); log in again on the next push
+                    dockerLogins.remove(registryUri);
+                    throw e;
+                }
+            }
             
-            log.info("Successfully pushed image to ECR: {}", fullImageUri);
+            log.info("Successfully pushed image to ECR: {} ({})", fullImageUri, digest);
             
             return PushResultDto.builder()
                     .service(serviceName)
                     .imageUri(fullImageUri)
+                    .digest(digest)
                     .success(true)
                     .errorMessage(null)
                     .build();
@@ -65,12 +124,17 @@ public class EcrService {
     }
 
     public void ensureRepositoryExists(String repoName) {
+        if (knownRepositories.contains(repoName)) {
+            return;
+        }
+
         try {
             DescribeRepositoriesRequest request = DescribeRepositoriesRequest.builder()
                     .repositoryNames(repoName)
                     .build();
             
             ecrClient.describeRepositories(request);
+            knownRepositories.add(repoName);
             log.info("ECR repository exists: {}", repoName);
             
         } catch (RepositoryNotFoundException e) {
@@ -84,34 +148,124 @@ public class EcrService {
                             .build())
                     .build();
             
-            ecrClient.createRepository(createRequest);
-            log.info("ECR repository created: {}", repoName);
+            try {
+                ecrClient.createRepository(createRequest);
+                log.info("ECR repository created: {}", repoName);
+            } catch (RepositoryAlreadyExistsException ignored) {
+                // Created concurrently by another push
+            }
+            knownRepositories.add(repoName);
+        }
+    }
+
+    /**
+     * Fetches an authorization token at most once per token lifetime. Concurrent pushes to the
+     * same registry wait for a single request instead of each fetching a token.
+     */
+    private RegistryToken getRegistryToken(String registryUri) {
+        RegistryToken token = registryTokens.get(registryUri);
+        if (token != null && isValid(token.expiresAt())) {
+            return token;
+        }
+
+        synchronized (loginLocks.computeIfAbsent(registryUri, key -> new Object())) {
+            token = registryTokens.get(registryUri);
+            if (token != null && isValid(token.expiresAt())) {
+                return token;
+            }
+
+            AuthorizationData authData = getEcrAuthToken();
+            token = new RegistryToken(authData.authorizationToken(), authData.expiresAt());
+            registryTokens.put(registryUri, token);
+            log.info("ECR token cached for {} until {}", registryUri, authData.expiresAt());
+            return token;
         }
     }
 
-    private String getEcrAuthToken() {
+    /**
+     * Logs the docker daemon into the registry at most once per token lifetime. Needed by every
+     * docker CLI command that talks to the registry: docker push, and builds that pull a sibling
+     * service's image (--build-context) or use the registry layer cache, whichever push mode is set.
+     */
+    public void ensureLoggedIn(String registryUri) {
+        if (isValid(dockerLogins.get(registryUri))) {
+            return;
+        }
+
+        synchronized (loginLocks.computeIfAbsent(registryUri, key -> new Object())) {
+            if (isValid(dockerLogins.get(registryUri))) {
+                return;
+            }
+
+            RegistryToken token = getRegistryToken(registryUri);
+            loginToEcr(token.authorizationToken(), registryUri);
+            dockerLogins.put(registryUri, token.expiresAt());
+        }
+    }
+
+    private boolean isValid(Instant expiresAt) {
+        return expiresAt != null && Instant.now()
+                .plus(Duration.ofMinutes(tokenRefreshMarginMinutes))
+                .isBefore(expiresAt);
+    }
+
+    private AuthorizationData getEcrAuthToken() {
         try {
             GetAuthorizationTokenRequest request = GetAuthorizationTokenRequest.builder().build();
             GetAuthorizationTokenResponse response = ecrClient.getAuthorizationToken(request);
             
-            AuthorizationData authData = response.authorizationData().get(0);
-            return authData.authorizationToken();
+            return response.authorizationData().get(0);
                     
         } catch (Exception e) {
             throw new RuntimeException("Failed to get ECR auth token: " + e.getMessage(), e);
         }
     }
 
+    private boolean useEngineApi() {
+        return engineApiEnabled && dockerEngineClient.isAvailable();
+    }
+
+    /**
+     * Tags and pushes through the Engine API. The credentials go with the request, so the daemon
+     * needs no docker login.
+     *
+     * @return the manifest digest of the pushed image
+     */
+    private String pushWithEngineApi(String localImageTag, String registryUri, String repoName, String tag) throws IOException {
+        String repository = registryUri + "/" + repoName;
+        dockerEngineClient.tagImage(localImageTag, repository, tag);
+        log.info("Tagged image: {} -> {}:{}", localImageTag, repository, tag);
+
+        String decodedToken = new String(Base64.getDecoder().decode(getRegistryToken(registryUri).authorizationToken()));
+        String registryAuth = dockerEngineClient.registryAuth("AWS", decodedToken.split(":")[1], registryUri);
+
+        try {
+            return dockerEngineClient.pushImage(repository, tag, registryAuth, Duration.ofMinutes(pushTimeoutMinutes),
+                    event -> {
+                        if (event.id() != null && event.status() != null) {
+                            log.debug("Push {}:{} layer {}: {} ({}/{} bytes)", repository, tag, event.id(),
+                                    event.status(), event.current(), event.total());
+                        }
+                    });
+        } catch (IOException e) {
+            // The token may have been revoked; fetch a new one on the next push
+            registryTokens.remove(registryUri);
+            throw e;
+        }
+    }
+
     private void tagImage(String sourceTag, String targetTag) {
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder("docker", "tag", sourceTag, targetTag);
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("docker", "tag", sourceTag, targetTag))
+                    .timeout(Duration.ofSeconds(30))
+                    .build());
             
-            if (exitCode == 0) {
+            if (result.isSuccess()) {
                 log.info("Tagged image: {} -> {}", sourceTag, targetTag);
             } else {
-                throw new RuntimeException("Failed to tag image with exit code: " + exitCode);
+                throw new RuntimeException("Failed to tag image with exit code: " + result.getExitCode()
+                        + " " + result.getStderr().trim());
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to tag image: " + e.getMessage(), e);
@@ -123,44 +277,49 @@ public class EcrService {
             String decodedToken = new String(Base64.getDecoder().decode(authToken));
             String password = decodedToken.split(":")[1];
             
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "docker", "login", "--username", "AWS", "--password-stdin", registryUri
-            );
-            Process process = processBuilder.start();
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("docker", "login", "--username", "AWS", "--password-stdin", registryUri))
+                    .stdin(password)
+                    .timeout(Duration.ofMinutes(1))
+                    .build());
             
-            try (OutputStreamWriter writer = new OutputStreamWriter(process.getOutputStream())) {
-                writer.write(password);
-                writer.flush();
-            }
-            
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
+            if (result.isSuccess()) {
                 log.info("Successfully logged into ECR");
             } else {
-                throw new RuntimeException("Failed to login to ECR with exit code: " + exitCode);
+                throw new RuntimeException("Failed to login to ECR with exit code: " + result.getExitCode()
+                        + " " + result.getStderr().trim());
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to login to ECR: " + e.getMessage(), e);
         }
     }
 
-    private void pushToEcr(String imageTag) {
+    /**
+     * @return the manifest digest reported by docker push, or null if it was not printed
+     */
+    private String pushToEcr(String imageTag) {
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder("docker", "push", imageTag);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    log.debug("Push output: {}", line);
-                }
-            }
+            String[] digest = new String[1];
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("docker", "push", imageTag))
+                    .mergeStderr(true)
+                    .timeout(Duration.ofMinutes(pushTimeoutMinutes))
+                    .stdoutHandler(line -> {
+                        log.debug("Push output: {}", line);
+                        // e.g. "latest: digest: sha256:... size: 1234"
+                        Matcher matcher = PUSH_DIGEST_PATTERN.matcher(line);
+                        if (matcher.find()) {
+                            digest[0] = matcher.group(1);
+                        }
+                    })
+                    .build());
             
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to push image with exit code: " + exitCode);
+            if (!result.isSuccess()) {
+                throw new RuntimeException(result.isTimedOut()
+                        ? "Push timed out after " + pushTimeoutMinutes + " minutes"
+                        : "Failed to push image with exit code: " + result.getExitCode());
             }
+            return digest[0];
             
         } catch (Exception e) {
             throw new RuntimeException("Failed to push image to ECR: " + e.getMessage(), e);
@@ -0,0 +1,306 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps one bare mirror per remote repository under {@code <workspace>/mirrors}.
+ * Mirrors are cloned once, refreshed with an incremental fetch, and working trees are
+ * produced from them by sharing the mirror's object database (alternates) instead of
+ * cloning again. Least recently used mirrors are evicted when the disk budget is exceeded,
+ * except those a working tree still borrows objects from.
+ */
+@Slf4j
+@Service
+public class GitMirrorCache {
+
+    private static final String MIRROR_DIR = "mirrors";
+
+    @Value("${build.workspace.path}")
+    private String workspacePath;
+
+    @Value("${build.git.mirror.max-size-mb:10240}")
+    private long maxSizeMb;
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    // Size of each mirror on disk, re-measured only after a clone or a fetch that updated refs; filled by one scan at first use
+    private final Map<Path, Long> mirrorSizes = new ConcurrentHashMap<>();
+    private volatile boolean sizesScanned = false;
+
+    // Working tree -> the mirror it borrows objects from, until the working tree is released
+    private final Map<Path, Path> leases = new ConcurrentHashMap<>();
+
+    // updated is false when a fetch brought nothing new, so the mirror's size is unchanged
+    private record OpenedMirror(Repository repository, boolean updated) {}
+
+    @FunctionalInterface
+    public interface MirrorCallback<T> {
+        T apply(Repository mirror) throws IOException, GitAPIException;
+    }
+
+    /**
+     * Fetches the latest refs into the mirror of the given repository and runs the callback
+     * while holding the per-repository lock, so concurrent builds never observe a half-updated
+     * mirror and eviction never removes a mirror that is in use.
+     */
+    public <T> T withMirror(String repoUrl, MirrorCallback<T> callback) {
+        Path mirrorDir = mirrorDirectory(repoUrl);
+        ReentrantLock lock = locks.computeIfAbsent(mirrorDir.toString(), k -> new ReentrantLock());
+
+        lock.lock();
+        // Stays true if anything fails, since the mirror may then have been deleted or half cloned
+        boolean updated = true;
+        try {
+            OpenedMirror opened = openOrCreate(repoUrl, mirrorDir);
+            updated = opened.updated();
+            try (Repository mirror = opened.repository()) {
+                Files.setLastModifiedTime(mirrorDir, FileTime.from(Instant.now()));
+                return callback.apply(mirror);
+            }
+        } catch (GitAPIException | IOException e) {
+            updated = true;
+            log.error("Mirror operation failed for {}: {}", repoUrl, e.getMessage());
+            throw new RuntimeException("Git mirror update failed: " + e.getMessage(), e);
+        } finally {
+            if (!Files.isDirectory(mirrorDir)) {
+                mirrorSizes.remove(mirrorDir);
+            } else if (updated || !mirrorSizes.containsKey(mirrorDir)) {
+                mirrorSizes.put(mirrorDir, directorySize(mirrorDir));
+            }
+            lock.unlock();
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Ends the lease taken by {@link #checkoutWorktree} once the working tree was deleted, so the
+     * mirror it borrowed objects from may be evicted again.
+     */
+    public void releaseWorktree(Path workDir) {
+        leases.remove(workDir.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Materializes the given commit of the mirror into workDir. The new repository borrows
+     * objects from the mirror through objects/info/alternates, so only the checked-out files
+     * are written to disk, and the mirror is not evicted until {@link #releaseWorktree}.
+     */
+    public void checkoutWorktree(Repository mirror, ObjectId commitId, Path workDir) throws IOException, GitAPIException {
+        checkoutWorktree(mirror, commitId, workDir, true);
+    }
+
+    /**
+     * @param checkout false to only point HEAD at the commit; its files are then read from the
+     *                 object database and nothing is written to workDir
+     */
+    public void checkoutWorktree(Repository mirror, ObjectId commitId, Path workDir, boolean checkout) throws IOException, GitAPIException {
+        // Taken under the mirror lock, which eviction also holds while it checks for leases
+        leases.put(workDir.toAbsolutePath().normalize(), mirror.getDirectory().toPath().toAbsolutePath().normalize());
+        Files.createDirectories(workDir);
+        try (Git init = Git.init().setDirectory(workDir.toFile()).call()) {
+            Path alternates = init.getRepository().getDirectory().toPath().resolve("objects/info/alternates");
+            Files.createDirectories(alternates.getParent());
+            Files.writeString(alternates, mirror.getDirectory().toPath().resolve("objects").toAbsolutePath() + "\n");
+        }
+
+        // Reopen so the object database picks up the alternates file
+        try (Repository worktree = Git.open(workDir.toFile()).getRepository();
+             RevWalk revWalk = new RevWalk(worktree)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+
+            RefUpdate headUpdate = worktree.updateRef(Constants.HEAD, true);
+            headUpdate.setNewObjectId(commit);
+            headUpdate.forceUpdate();
+            if (!checkout) {
+                return;
+            }
+
+            DirCacheCheckout dirCacheCheckout = new DirCacheCheckout(worktree, worktree.lockDirCache(), commit.getTree());
+            dirCacheCheckout.setFailOnConflict(true);
+            dirCacheCheckout.checkout();
+        }
+    }
+
+    private OpenedMirror openOrCreate(String repoUrl, Path mirrorDir) throws GitAPIException, IOException {
+        CredentialsProvider credentialsProvider = new UsernamePasswordCredentialsProvider("", "");
+
+        if (Files.exists(mirrorDir.resolve("HEAD"))) {
+            Git git = Git.open(mirrorDir.toFile());
+            try {
+                FetchResult result = git.fetch()
+                        .setRemote("origin")
+                        .setRemoveDeletedRefs(true)
+                        .setCredentialsProvider(credentialsProvider)
+                        .call();
+                syncHead(git.getRepository(), result);
+                log.info("Mirror fetched: {} ({} ref updates)", repoUrl, result.getTrackingRefUpdates().size());
+                return new OpenedMirror(git.getRepository(), !result.getTrackingRefUpdates().isEmpty());
+            } catch (GitAPIException | IOException e) {
+                log.warn("Mirror fetch failed for {}, recreating mirror: {}", repoUrl, e.getMessage());
+                git.close();
+                deleteDirectory(mirrorDir);
+            }
+        }
+
+        Files.createDirectories(mirrorDir.getParent());
+        log.info("Creating mirror for {} at {}", repoUrl, mirrorDir);
+
+        Git git = Git.cloneRepository()
+                .setURI(repoUrl)
+                .setDirectory(mirrorDir.toFile())
+                .setMirror(true)
+                .setCredentialsProvider(credentialsProvider)
+                .call();
+        return new OpenedMirror(git.getRepository(), true);
+    }
+
+    /**
+     * A mirror fetch does not move HEAD, so follow the remote's default branch if it changed.
+     */
+    private void syncHead(Repository mirror, FetchResult result) throws IOException {
+        Ref advertisedHead = result.getAdvertisedRef(Constants.HEAD);
+        if (advertisedHead == null || !advertisedHead.isSymbolic()) {
+            return;
+        }
+
+        String target = advertisedHead.getTarget().getName();
+        Ref localHead = mirror.exactRef(Constants.HEAD);
+        if (localHead != null && localHead.isSymbolic() && target.equals(localHead.getTarget().getName())) {
+            return;
+        }
+
+        RefUpdate.Result linkResult = mirror.updateRef(Constants.HEAD).link(target);
+        log.info("Mirror HEAD moved to {} ({})", target, linkResult);
+    }
+
+    private void evictIfNeeded() {
+        scanSizesOnce();
+
+        long budget = maxSizeMb * 1024 * 1024;
+        long total = mirrorSizes.values().stream().mapToLong(Long::longValue).sum();
+        if (total <= budget) {
+            return;
+        }
+
+        List<Path> mirrors = new ArrayList<>(mirrorSizes.keySet());
+        mirrors.sort(Comparator.comparing(this::lastUsed));
+        for (Path mirror : mirrors) {
+            if (total <= budget) {
+                break;
+            }
+
+            ReentrantLock lock = locks.computeIfAbsent(mirror.toString(), k -> new ReentrantLock());
+            if (!lock.tryLock()) {
+                continue; // In use by a build, try the next one
+            }
+            try {
+                if (leases.containsValue(mirror)) {
+                    continue; // A working tree still reads objects from it
+                }
+                deleteDirectory(mirror);
+                Long size = mirrorSizes.remove(mirror);
+                total -= size != null ? size : 0;
+                log.info("Evicted mirror {} ({} bytes), cache size now {} bytes", mirror.getFileName(), size, total);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private synchronized void scanSizesOnce() {
+        if (sizesScanned) {
+            return;
+        }
+        Path root = Paths.get(workspacePath, MIRROR_DIR).toAbsolutePath().normalize();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> paths = Files.list(root)) {
+                paths.filter(Files::isDirectory)
+                        .forEach(mirror -> mirrorSizes.computeIfAbsent(mirror, this::directorySize));
+            } catch (IOException e) {
+                log.warn("Failed to list mirrors: {}", e.getMessage());
+                return;
+            }
+        }
+        sizesScanned = true;
+    }
+
+    private Path mirrorDirectory(String repoUrl) {
+        String key = repoUrl.trim()
+                .replaceFirst("^[a-zA-Z]+://", "")
+                .replaceFirst("/$", "")
+                .replaceFirst("\\.git$", "")
+                .replaceAll("[^a-zA-Z0-9._-]", "_");
+        return Paths.get(workspacePath, MIRROR_DIR, key + ".git").toAbsolutePath().normalize();
+    }
+
+    private FileTime lastUsed(Path mirror) {
+        try {
+            return Files.getLastModifiedTime(mirror);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private long directorySize(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .mapToLong(path -> {
+                        try {
+                            return Files.size(path);
+                        } catch (IOException e) {
+                            return 0L;
+                        }
+                    })
+                    .sum();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()) // Delete files before directories
+                    .forEach(path -> {
+                        try {
+                            Files.delete(path);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete: {}", path);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Failed to delete mirror directory {}: {}", directory, e.getMessage());
+        }
+    }
+}
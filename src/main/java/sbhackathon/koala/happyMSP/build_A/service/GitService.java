@@ -1,30 +1,62 @@
 package sbhackathon.koala.happyMSP.build_A.service;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.errors.RemoteRepositoryException;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.config.GitCloneMode;
 import sbhackathon.koala.happyMSP.build_A.dto.CloneResultDto;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class GitService {
 
+    private static final String SERVICES_DIR = "services";
+
+    private final GitMirrorCache gitMirrorCache;
+    private final RemoteHeadResolver remoteHeadResolver;
+
     @Value("${build.workspace.path}")
     private String workspacePath;
 
-    public String normalizeGitUrl(String repoUrl) {
+    @Value("${build.git.clone-mode:MIRROR}")
+    private GitCloneMode cloneMode;
+
+    public static String normalizeGitUrl(String repoUrl) {
         if (repoUrl == null || repoUrl.trim().isEmpty()) {
             throw new IllegalArgumentException("Repository URL cannot be null or empty");
         }
@@ -55,6 +87,16 @@ public class GitService {
     }
 
     public CloneResultDto cloneRepository(String repoUrl, String projectId) {
+        return cloneRepository(repoUrl, projectId, null, true);
+    }
+
+    /**
+     * @param commitSha the commit to check out, or null for the head of the default branch; a full
+     *                  SHA is fetched directly in SHALLOW mode, an abbreviated one needs the mirror
+     * @param checkout false to clone without writing any files (only the .git directory), for
+     *                 builds that read the commit from Git objects
+     */
+    public CloneResultDto cloneRepository(String repoUrl, String projectId, String commitSha, boolean checkout) {
         try {
             String repoPath = workspacePath + "/" + projectId;
             Path repoDir = Paths.get(repoPath);
@@ -62,34 +104,20 @@ public class GitService {
             if (Files.exists(repoDir)) {
                 deleteDirectory(repoDir.toFile());
             }
+            gitMirrorCache.releaseWorktree(repoDir);
             
             Files.createDirectories(repoDir.getParent());
             
-            log.info("Cloning repository {} to {}", repoUrl, repoPath);
-            
-            CredentialsProvider credentialsProvider = new UsernamePasswordCredentialsProvider("", "");
-            
-            Git git = Git.cloneRepository()
-                    .setURI(repoUrl)
-                    .setDirectory(new File(repoPath))
-                    .setCredentialsProvider(credentialsProvider)
-                    .call();
-            
-            Repository repository = git.getRepository();
-            
-            String defaultBranch = detectDefaultBranch(git);
-            log.info("Detected default branch: {}", defaultBranch);
-            
-            if (!defaultBranch.equals("main") && !defaultBranch.equals("master")) {
-                git.checkout().setName(defaultBranch).call();
-            }
-            
-            String gitSha = repository.resolve("HEAD").getName();
+            String gitSha = cloneMode == GitCloneMode.SHALLOW
+                    ? shallowClone(repoUrl, repoDir, commitSha, checkout)
+                    : checkoutFromMirror(repoUrl, repoDir, commitSha, checkout);
             String shortSha = gitSha.substring(0, 7);
             
-            validateMonorepoStructure(repoPath);
-            
-            git.close();
+            if (checkout) {
+                validateMonorepoStructure(repoPath);
+            } else {
+                readClonedHead(repoPath, (repository, commit) -> commit);
+            }
             
             log.info("Clone completed. Git SHA: {}", shortSha);
             
@@ -105,17 +133,352 @@ public class GitService {
         }
     }
     
-    private String detectDefaultBranch(Git git) throws GitAPIException {
+    /**
+     * Call once a clone made by {@link #cloneRepository} was deleted, so the mirror it borrowed
+     * objects from can be evicted again.
+     */
+    public void releaseClone(String repoPath) {
+        gitMirrorCache.releaseWorktree(Paths.get(repoPath));
+    }
+
+    @FunctionalInterface
+    public interface CommitReader<T> {
+        T read(Repository repository, RevCommit commit) throws IOException;
+    }
+
+    /**
+     * Reads the tip of the default branch straight from the object database, without writing a
+     * working tree: from the mirror in MIRROR mode, and from a bare depth-1 clone under
+     * {@code <workspace>/<projectId>} in SHALLOW mode (the caller removes that directory).
+     * The commit has been checked for the /services directory when the reader runs.
+     */
+    public <T> T readHead(String repoUrl, String projectId, CommitReader<T> reader) {
         try {
-            Ref head = git.getRepository().findRef("HEAD");
+            if (cloneMode == GitCloneMode.SHALLOW) {
+                return readShallowHead(repoUrl, Paths.get(workspacePath, projectId), reader);
+            }
+            return gitMirrorCache.withMirror(repoUrl, mirror -> readCommit(mirror, resolveMirrorHead(mirror), reader));
+        } catch (GitAPIException | IOException e) {
+            log.error("Failed to read repository: {}", e.getMessage());
+            throw new RuntimeException("Git read failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists the paths that differ between two commits of a cloned repository.
+     *
+     * @return the changed paths, or empty if either commit is not available locally
+     *         (e.g. a shallow clone or a first deployment)
+     */
+    public Optional<Set<String>> findChangedPaths(String repoPath, String fromSha, String toSha) {
+        if (fromSha == null || toSha == null) {
+            return Optional.empty();
+        }
+
+        try (Git git = Git.open(new File(repoPath));
+             RevWalk revWalk = new RevWalk(git.getRepository());
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            Repository repository = git.getRepository();
+            ObjectId from = repository.resolve(fromSha + "^{commit}");
+            ObjectId to = repository.resolve(toSha + "^{commit}");
+            if (from == null || to == null) {
+                log.info("Commit {} or {} not available locally, cannot diff", fromSha, toSha);
+                return Optional.empty();
+            }
+
+            diffFormatter.setRepository(repository);
+            diffFormatter.setDetectRenames(false);
+            List<DiffEntry> entries = diffFormatter.scan(
+                    revWalk.parseCommit(from).getTree(),
+                    revWalk.parseCommit(to).getTree());
+
+            Set<String> changedPaths = new HashSet<>();
+            for (DiffEntry entry : entries) {
+                if (!DiffEntry.DEV_NULL.equals(entry.getOldPath())) {
+                    changedPaths.add(entry.getOldPath());
+                }
+                if (!DiffEntry.DEV_NULL.equals(entry.getNewPath())) {
+                    changedPaths.add(entry.getNewPath());
+                }
+            }
+            log.info("{} paths changed between {} and {}", changedPaths.size(), fromSha, toSha);
+            return Optional.of(changedPaths);
+        } catch (IOException | RevisionSyntaxException e) {
+            log.warn("Failed to diff {}..{}: {}", fromSha, toSha, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Resolves the tree id of a directory at HEAD of a cloned repository, e.g. services/auth.
+     *
+     * @return the tree id, or empty if the path does not exist or the repository cannot be read
+     */
+    public Optional<String> resolveTreeId(String repoPath, String path) {
+        try (Git git = Git.open(new File(repoPath));
+             RevWalk revWalk = new RevWalk(git.getRepository())) {
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                return Optional.empty();
+            }
+
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, revWalk.parseCommit(head).getTree())) {
+                if (treeWalk == null || treeWalk.getFileMode(0) != FileMode.TREE) {
+                    return Optional.empty();
+                }
+                return Optional.of(treeWalk.getObjectId(0).getName());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to resolve tree id of {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Runs the reader on HEAD of a repository cloned by {@link #cloneRepository}, after checking
+     * the commit for the /services directory. Works whether or not the clone was checked out.
+     */
+    public <T> T readClonedHead(String repoPath, CommitReader<T> reader) {
+        try (Git git = Git.open(new File(repoPath))) {
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                throw new IOException("HEAD not found in " + repoPath);
+            }
+            return readCommit(repository, head, reader);
+        } catch (IOException e) {
+            log.error("Failed to read cloned repository {}: {}", repoPath, e.getMessage());
+            throw new RuntimeException("Git read failed: " + e.getMessage(), e);
+        }
+    }
+
+    private String checkoutFromMirror(String repoUrl, Path repoDir, String commitSha, boolean checkout) {
+        log.info("Checking out repository {} at {} to {} from mirror cache", repoUrl,
+                commitSha != null ? commitSha : "HEAD", repoDir);
+
+        return gitMirrorCache.withMirror(repoUrl, mirror -> {
+            ObjectId commit = commitSha != null ? resolveMirrorCommit(mirror, commitSha) : resolveMirrorHead(mirror);
+            gitMirrorCache.checkoutWorktree(mirror, commit, repoDir, checkout);
+            return commit.getName();
+        });
+    }
+
+    private ObjectId resolveMirrorCommit(Repository mirror, String commitSha) throws IOException {
+        ObjectId commit = mirror.resolve(commitSha + "^{commit}");
+        if (commit == null) {
+            throw new IOException("Commit " + commitSha + " not found in mirror");
+        }
+        return commit;
+    }
+
+    private ObjectId resolveMirrorHead(Repository mirror) throws IOException {
+        String defaultBranch = detectDefaultBranch(mirror);
+        log.info("Detected default branch: {}", defaultBranch);
+
+        ObjectId head = mirror.resolve(Constants.R_HEADS + defaultBranch);
+        if (head == null) {
+            head = mirror.resolve(Constants.HEAD);
+        }
+        if (head == null) {
+            throw new IOException("Default branch not found: " + defaultBranch);
+        }
+        return head;
+    }
+
+    /**
+     * Fetches a single commit at depth 1 and writes only the services/ subtree, which is all the
+     * scanner and the Docker builds read (nothing without checkout). A job's commit is fetched by
+     * its SHA, so it still builds after the branch moved on; without a commit the tip of the
+     * default branch is cloned.
+     */
+    private String shallowClone(String repoUrl, Path repoDir, String commitSha, boolean checkout) throws GitAPIException, IOException {
+        if (commitSha != null) {
+            return shallowFetchCommit(repoUrl, repoDir, commitSha, checkout);
+        }
+
+        String defaultBranch = resolveRemoteDefaultBranch(repoUrl);
+        log.info("Shallow cloning repository {} (branch: {}) to {}", repoUrl, defaultBranch, repoDir);
+
+        String branchRef = Constants.R_HEADS + defaultBranch;
+        try (Git git = Git.cloneRepository()
+                .setURI(repoUrl)
+                .setDirectory(repoDir.toFile())
+                .setBranch(branchRef)
+                .setBranchesToClone(List.of(branchRef))
+                .setCloneAllBranches(false)
+                .setDepth(1)
+                .setNoCheckout(true)
+                .setCredentialsProvider(new UsernamePasswordCredentialsProvider("", ""))
+                .call()) {
+
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                throw new IOException("Default branch not found: " + defaultBranch);
+            }
+            return materialize(repository, head, repoDir, checkout);
+        }
+    }
+
+    /**
+     * Fetches the commit by its SHA (refspec {@code <sha>}) at depth 1 and detaches HEAD at it.
+     * Abbreviated SHAs cannot be fetched, and servers may refuse wants that are no ref tip; both
+     * are served from the mirror cache instead.
+     */
+    private String shallowFetchCommit(String repoUrl, Path repoDir, String commitSha, boolean checkout)
+            throws GitAPIException, IOException {
+        if (!ObjectId.isId(commitSha)) {
+            log.info("Commit {} is abbreviated, cannot fetch it by SHA; using the mirror cache", commitSha);
+            return checkoutFromMirror(repoUrl, repoDir, commitSha, checkout);
+        }
+
+        log.info("Shallow fetching commit {} of repository {} to {}", commitSha, repoUrl, repoDir);
+        try (Git git = Git.init().setDirectory(repoDir.toFile()).call()) {
+            if (fetchCommit(git, repoUrl, commitSha)) {
+                Repository repository = git.getRepository();
+                ObjectId commit = ObjectId.fromString(commitSha);
+                if (!repository.getObjectDatabase().has(commit)) {
+                    throw new IOException("Commit " + commitSha + " was not fetched from " + repoUrl);
+                }
+                RefUpdate head = repository.updateRef(Constants.HEAD, true);
+                head.setNewObjectId(commit);
+                head.forceUpdate();
+                return materialize(repository, commit, repoDir, checkout);
+            }
+        }
+
+        deleteDirectory(repoDir.toFile());
+        return checkoutFromMirror(repoUrl, repoDir, commitSha, checkout);
+    }
+
+    /**
+     * @return false if the server refused to send a commit that is no ref tip
+     */
+    private boolean fetchCommit(Git git, String repoUrl, String commitSha) throws GitAPIException {
+        try {
+            git.fetch()
+                    .setRemote(repoUrl)
+                    .setRefSpecs(new RefSpec(commitSha))
+                    .setDepth(1)
+                    .setTagOpt(TagOpt.NO_TAGS)
+                    .setCredentialsProvider(new UsernamePasswordCredentialsProvider("", ""))
+                    .call();
+            return true;
+        } catch (TransportException e) {
+            // The server answered with an error (e.g. "not our ref"), as opposed to a connection failure
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof RemoteRepositoryException) {
+                    log.info("Fetching commit {} by SHA was refused ({}), using the mirror cache", commitSha,
+                            cause.getMessage());
+                    return false;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private String materialize(Repository repository, ObjectId commit, Path repoDir, boolean checkout) throws IOException {
+        if (checkout) {
+            int written = materializeSubtree(repository, commit, repoDir, SERVICES_DIR);
+            log.info("Materialized {} files under /{}", written, SERVICES_DIR);
+        }
+        return commit.getName();
+    }
+
+    /**
+     * Fetches only the tip of the default branch into a bare repository; nothing is checked out.
+     */
+    private <T> T readShallowHead(String repoUrl, Path repoDir, CommitReader<T> reader) throws GitAPIException, IOException {
+        if (Files.exists(repoDir)) {
+            deleteDirectory(repoDir.toFile());
+        }
+        Files.createDirectories(repoDir.getParent());
+
+        String defaultBranch = resolveRemoteDefaultBranch(repoUrl);
+        log.info("Fetching head of repository {} (branch: {}) into {}", repoUrl, defaultBranch, repoDir);
+
+        String branchRef = Constants.R_HEADS + defaultBranch;
+        try (Git git = Git.cloneRepository()
+                .setURI(repoUrl)
+                .setDirectory(repoDir.toFile())
+                .setBare(true)
+                .setBranch(branchRef)
+                .setBranchesToClone(List.of(branchRef))
+                .setCloneAllBranches(false)
+                .setDepth(1)
+                .setCredentialsProvider(new UsernamePasswordCredentialsProvider("", ""))
+                .call()) {
+
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(branchRef);
+            if (head == null) {
+                throw new IOException("Default branch not found: " + defaultBranch);
+            }
+            return readCommit(repository, head, reader);
+        }
+    }
+
+    private <T> T readCommit(Repository repository, ObjectId commitId, CommitReader<T> reader) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            validateMonorepoStructure(repository, commit);
+            return reader.read(repository, commit);
+        }
+    }
+
+    private String resolveRemoteDefaultBranch(String repoUrl) {
+        String defaultBranch = remoteHeadResolver.resolveDefaultBranch(repoUrl);
+        if (defaultBranch == null || defaultBranch.equals(Constants.HEAD)) {
+            defaultBranch = "main";
+        }
+        return defaultBranch;
+    }
+
+    private int materializeSubtree(Repository repository, ObjectId commitId, Path targetDir, String subtree) throws IOException {
+        int written = 0;
+        try (RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilter.create(subtree));
+
+            while (treeWalk.next()) {
+                FileMode mode = treeWalk.getFileMode(0);
+                Path target = targetDir.resolve(treeWalk.getPathString());
+                Files.createDirectories(target.getParent());
+
+                if (mode == FileMode.SYMLINK) {
+                    byte[] linkTarget = repository.open(treeWalk.getObjectId(0)).getBytes();
+                    Files.createSymbolicLink(target, Paths.get(new String(linkTarget, StandardCharsets.UTF_8)));
+                } else if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                    try (OutputStream out = Files.newOutputStream(target)) {
+                        repository.open(treeWalk.getObjectId(0)).copyTo(out);
+                    }
+                    if (mode == FileMode.EXECUTABLE_FILE) {
+                        target.toFile().setExecutable(true);
+                    }
+                } else {
+                    continue; // Submodules are not part of the build context
+                }
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private String detectDefaultBranch(Repository repository) {
+        try {
+            Ref head = repository.exactRef(Constants.HEAD);
             if (head != null && head.isSymbolic()) {
                 String target = head.getTarget().getName();
-                return target.replace("refs/heads/", "");
+                return target.replace(Constants.R_HEADS, "");
             }
             
-            if (git.getRepository().findRef("refs/heads/main") != null) {
+            if (repository.findRef(Constants.R_HEADS + "main") != null) {
                 return "main";
-            } else if (git.getRepository().findRef("refs/heads/master") != null) {
+            } else if (repository.findRef(Constants.R_HEADS + "master") != null) {
                 return "master";
             }
             
@@ -127,12 +490,21 @@ public class GitService {
     }
     
     private void validateMonorepoStructure(String repoPath) {
-        Path servicesPath = Paths.get(repoPath, "services");
+        Path servicesPath = Paths.get(repoPath, SERVICES_DIR);
         if (!Files.exists(servicesPath) || !Files.isDirectory(servicesPath)) {
             throw new RuntimeException("Monorepo structure validation failed: /services directory not found");
         }
         log.info("Monorepo structure validated: /services directory exists");
     }
+
+    private void validateMonorepoStructure(Repository repository, RevCommit commit) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, SERVICES_DIR, commit.getTree())) {
+            if (treeWalk == null || treeWalk.getFileMode(0) != FileMode.TREE) {
+                throw new RuntimeException("Monorepo structure validation failed: /services directory not found");
+            }
+        }
+        log.info("Monorepo structure validated: /services tree exists in {}", commit.getId().abbreviate(7).name());
+    }
     
     private void deleteDirectory(File directory) {
         if (directory.exists()) {
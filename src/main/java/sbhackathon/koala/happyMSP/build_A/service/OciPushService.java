@@ -0,0 +1,285 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.util.OciRegistryClient;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pushes a locally built image without going through the Docker daemon: the image is exported
+ * with docker save, its layers are compressed and uploaded concurrently over the OCI
+ * distribution API, and an OCI manifest is put last. Blobs the registry already has are skipped,
+ * and blobs recently pushed to another repository of the registry are mounted instead of uploaded.
+ */
+@Slf4j
+@Service
+public class OciPushService {
+
+    private static final String OCI_CONFIG = "application/vnd.oci.image.config.v1+json";
+    private static final String OCI_LAYER_GZIP = "application/vnd.oci.image.layer.v1.tar+gzip";
+    private static final String EXPORT_DIR = "oci-export";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_KNOWN_BLOBS = 10_000;
+
+    @Value("${build.workspace.path}")
+    private String workspacePath;
+
+    // http is only meant for a local registry:2 used in testing
+    @Value("${build.push.registry-scheme:https}")
+    private String registryScheme;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    private final ExecutorService layerExecutor;
+    private final ProcessRunner processRunner;
+
+    // "<registry>@<digest>" -> repository the blob was last pushed to, used as the mount source
+    private final Map<String, String> blobLocations = new ConcurrentHashMap<>();
+
+    private record Blob(String mediaType, String digest, long size, Path path) {}
+
+    public OciPushService(@Value("${build.push.layer-concurrency:4}") int layerConcurrency,
+                          ProcessRunner processRunner) {
+        this.layerExecutor = Executors.newFixedThreadPool(layerConcurrency);
+        this.processRunner = processRunner;
+    }
+
+    /**
+     * @param authorization Authorization header for the registry, or null for an anonymous registry
+     * @return the digest of the pushed manifest
+     */
+    public String push(String localImageTag, String registryUri, String repository, String tag, String authorization) {
+        Path exportDir = Paths.get(workspacePath, EXPORT_DIR, UUID.randomUUID().toString());
+        OciRegistryClient client = new OciRegistryClient(httpClient,
+                URI.create(registryScheme + "://" + registryUri), authorization);
+
+        try {
+            Files.createDirectories(exportDir);
+            exportImage(localImageTag, exportDir);
+
+            JsonNode imageManifest = objectMapper.readTree(exportDir.resolve("manifest.json").toFile()).get(0);
+            Blob config = describe(OCI_CONFIG, exportDir.resolve(imageManifest.get("Config").asText()));
+
+            List<CompletableFuture<Blob>> uploads = new ArrayList<>();
+            uploads.add(CompletableFuture.supplyAsync(() -> pushBlob(client, registryUri, repository, config), layerExecutor));
+            JsonNode layerPaths = imageManifest.get("Layers");
+            for (int i = 0; i < layerPaths.size(); i++) {
+                Path layer = exportDir.resolve(layerPaths.get(i).asText());
+                Path compressed = exportDir.resolve("layer-" + i + ".tar.gz");
+                uploads.add(CompletableFuture.supplyAsync(
+                        () -> pushBlob(client, registryUri, repository, compressLayer(layer, compressed)), layerExecutor));
+            }
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+
+            byte[] manifest = buildManifest(uploads.stream().map(CompletableFuture::join).toList());
+            String digest = client.putManifest(repository, tag, manifest, OciRegistryClient.OCI_MANIFEST);
+            if (digest == null) {
+                digest = "sha256:" + HexFormat.of().formatHex(sha256().digest(manifest));
+            }
+
+            log.info("Pushed {} to {}/{}:{} ({})", localImageTag, registryUri, repository, tag, digest);
+            return digest;
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to push image: " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to push image: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Image push interrupted", e);
+        } finally {
+            deleteRecursively(exportDir);
+        }
+    }
+
+    private void exportImage(String localImageTag, Path exportDir) throws IOException, InterruptedException {
+        Path archive = exportDir.resolve("image.tar");
+        ProcessResult result = processRunner.run(ProcessSpec.builder()
+                .command(List.of("docker", "save", "-o", archive.toString(), localImageTag))
+                .mergeStderr(true)
+                .timeout(Duration.ofMinutes(10))
+                .build());
+        if (!result.isSuccess()) {
+            throw new IOException("docker save failed with exit code: " + result.getExitCode() + " " + result.getStdout().trim());
+        }
+
+        // Works for both the legacy (<id>/layer.tar) and the OCI layout (blobs/sha256/<hex>) of docker save
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(Files.newInputStream(archive))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                Path target = exportDir.resolve(entry.getName()).normalize();
+                if (!target.startsWith(exportDir)) {
+                    throw new IOException("Invalid entry in image archive: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else if (entry.isFile()) {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(tar, target);
+                }
+            }
+        }
+        Files.delete(archive);
+    }
+
+    private Blob compressLayer(Path layer, Path compressed) {
+        try {
+            // The containerd image store exports layers still compressed; those are pushed as-is
+            if (isGzip(layer)) {
+                return describe(OCI_LAYER_GZIP, layer);
+            }
+
+            MessageDigest digest = sha256();
+            try (InputStream in = Files.newInputStream(layer);
+                 OutputStream out = new GZIPOutputStream(new DigestOutputStream(Files.newOutputStream(compressed), digest))) {
+                in.transferTo(out);
+            }
+            return new Blob(OCI_LAYER_GZIP, "sha256:" + HexFormat.of().formatHex(digest.digest()),
+                    Files.size(compressed), compressed);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Blob pushBlob(OciRegistryClient client, String registryUri, String repository, Blob blob) {
+        String locationKey = registryUri + "@" + blob.digest();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (client.blobExists(repository, blob.digest())) {
+                    log.debug("Blob {} already in {}", blob.digest(), repository);
+                } else {
+                    String mountFrom = blobLocations.get(locationKey);
+                    boolean mounted = client.uploadBlob(repository, blob.digest(), blob.path(),
+                            repository.equals(mountFrom) ? null : mountFrom);
+                    log.debug("Blob {} {} {} ({} bytes)", blob.digest(), mounted ? "mounted from " + mountFrom + " into" : "uploaded to",
+                            repository, blob.size());
+                }
+
+                if (blobLocations.size() >= MAX_KNOWN_BLOBS) {
+                    blobLocations.clear();
+                }
+                blobLocations.put(locationKey, repository);
+                return blob;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new CompletionException(e);
+                }
+                log.warn("Blob {} push attempt {} failed: {}", blob.digest(), attempt, e.getMessage());
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(ie);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+    }
+
+    private byte[] buildManifest(List<Blob> blobs) throws IOException {
+        ObjectNode manifest = objectMapper.createObjectNode();
+        manifest.put("schemaVersion", 2);
+        manifest.put("mediaType", OciRegistryClient.OCI_MANIFEST);
+        manifest.set("config", descriptor(blobs.get(0)));
+        ArrayNode layers = manifest.putArray("layers");
+        blobs.stream().skip(1).forEach(blob -> layers.add(descriptor(blob)));
+        return objectMapper.writeValueAsBytes(manifest);
+    }
+
+    private ObjectNode descriptor(Blob blob) {
+        ObjectNode descriptor = objectMapper.createObjectNode();
+        descriptor.put("mediaType", blob.mediaType());
+        descriptor.put("digest", blob.digest());
+        descriptor.put("size", blob.size());
+        return descriptor;
+    }
+
+    private Blob describe(String mediaType, Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return new Blob(mediaType, "sha256:" + HexFormat.of().formatHex(digest.digest()), Files.size(path), path);
+    }
+
+    private boolean isGzip(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    log.warn("Failed to delete {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to clean up export directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        layerExecutor.shutdownNow();
+    }
+}
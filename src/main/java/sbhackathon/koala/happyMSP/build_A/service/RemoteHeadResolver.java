@@ -0,0 +1,113 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the commit the remote default branch points to with a single ls-remote round trip,
+ * without cloning or touching the workspace. Results are cached per repository, keyed by the
+ * normalized URL repositories are matched by, for a short TTL so repeated deployment requests
+ * for the same repository are answered from memory whichever URL variant they use; expired
+ * entries are dropped whenever a new head is stored, so the cache only holds recently used URLs.
+ */
+@Slf4j
+@Service
+public class RemoteHeadResolver {
+
+    @Value("${build.git.remote-head-ttl-ms:5000}")
+    private long ttlMs;
+
+    private final Map<String, CachedHead> cache = new ConcurrentHashMap<>();
+
+    private record CachedHead(String sha, String branch, long expiresAt) {}
+
+    /**
+     * @return the full SHA of the remote default branch head, or null if it cannot be resolved
+     */
+    public String resolveHead(String repoUrl) {
+        CachedHead head = lookup(repoUrl);
+        return head != null ? head.sha() : null;
+    }
+
+    /**
+     * @return the name of the remote default branch (without refs/heads/), or null if unresolvable
+     */
+    public String resolveDefaultBranch(String repoUrl) {
+        CachedHead head = lookup(repoUrl);
+        return head != null ? head.branch() : null;
+    }
+
+    /**
+     * @return the 7-character SHA used for Repository.latestCommit, or null if unresolvable
+     */
+    public String resolveShortHead(String repoUrl) {
+        String sha = resolveHead(repoUrl);
+        return sha != null ? sha.substring(0, 7) : null;
+    }
+
+    /**
+     * Drops the cached head so the next lookup asks the remote again, e.g. once a deployment
+     * has moved the repository to a new commit.
+     */
+    public void invalidate(String repoUrl) {
+        cache.remove(GitService.normalizeGitUrl(repoUrl));
+    }
+
+    private CachedHead lookup(String repoUrl) {
+        long now = System.currentTimeMillis();
+        String key = GitService.normalizeGitUrl(repoUrl);
+        CachedHead cached = cache.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            log.debug("Remote HEAD cache hit for {}: {}", repoUrl, cached.sha());
+            return cached;
+        }
+
+        try {
+            Map<String, Ref> refs = Git.lsRemoteRepository()
+                    .setRemote(repoUrl)
+                    .setCredentialsProvider(new UsernamePasswordCredentialsProvider("", ""))
+                    .callAsMap();
+
+            Ref headRef = findHead(refs);
+            if (headRef == null || headRef.getObjectId() == null) {
+                log.warn("Remote HEAD not advertised for {}", repoUrl);
+                return null;
+            }
+
+            String branch = headRef.getLeaf().getName().replace(Constants.R_HEADS, "");
+            CachedHead head = new CachedHead(headRef.getObjectId().getName(), branch, now + ttlMs);
+            cache.values().removeIf(cachedHead -> cachedHead.expiresAt() <= now);
+            cache.put(key, head);
+            log.info("Resolved remote HEAD for {}: {} ({})", repoUrl, head.sha(), branch);
+            return head;
+        } catch (GitAPIException e) {
+            log.warn("ls-remote failed for {}: {}", repoUrl, e.getMessage());
+            return null;
+        }
+    }
+
+    private Ref findHead(Map<String, Ref> refs) {
+        // HEAD is advertised as a symbolic ref to the default branch when the server supports it
+        Ref head = refs.get(Constants.HEAD);
+        if (head != null && head.isSymbolic()) {
+            return head;
+        }
+
+        for (String branch : new String[]{"main", "master"}) {
+            Ref ref = refs.get(Constants.R_HEADS + branch);
+            if (ref != null) {
+                return ref;
+            }
+        }
+        return head;
+    }
+}
@@ -1,124 +1,334 @@
 package sbhackathon.koala.happyMSP.build_A.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildGraphDto;
 import sbhackathon.koala.happyMSP.build_A.dto.ServiceScanResultDto;
+import sbhackathon.koala.happyMSP.build_A.util.DockerfileParser;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
 @Slf4j
 @Service
 public class ServiceScanner {
 
+    private static final String SERVICES_DIR = "services";
     private static final Pattern SERVICE_NAME_PATTERN = Pattern.compile("^[a-z0-9]{1,20}$");
     private static final Pattern EXPOSE_PATTERN = Pattern.compile("^\\s*EXPOSE\\s+(\\d+)(?:/\\w+)?.*$", Pattern.CASE_INSENSITIVE);
+    // Instructions that read the build context; a shared stage ends before the first of them
+    private static final Set<String> CONTEXT_INSTRUCTIONS = Set.of("COPY", "ADD", "ONBUILD");
     
-    public ServiceScanResultDto scanServices(String repoPath) {
-        try {
-            Path servicesDir = Paths.get(repoPath, "services");
-            
-            if (!Files.exists(servicesDir) || !Files.isDirectory(servicesDir)) {
-                throw new RuntimeException("Services directory not found: " + servicesDir);
+    /**
+     * Scans the services of a commit straight from the object database: services/* and the
+     * Dockerfiles are read as tree and blob objects, so no working tree is needed.
+     *
+     * @param treeId the root tree of the commit
+     */
+    public ServiceScanResultDto scanServices(Repository repository, ObjectId treeId) {
+        return scan(readServiceDirectories(repository, treeId));
+    }
+
+    private ServiceScanResultDto scan(Map<String, String> directories) {
+        List<ServiceScanResultDto.ServiceInfo> services = new ArrayList<>();
+
+        // Images of sibling services (FROM base) are built here, not pulled
+        Set<String> serviceNames = directories.keySet();
+
+        directories.forEach((serviceName, dockerfile) -> {
+            if (!isValidServiceName(serviceName)) {
+                log.warn("Service {} skipped: Invalid name (must be lowercase alphanumeric, ≤20 chars)", serviceName);
+                return;
             }
-            
-            List<ServiceScanResultDto.ServiceInfo> services = new ArrayList<>();
-            
-            try (Stream<Path> paths = Files.list(servicesDir)) {
-                paths.filter(Files::isDirectory)
-                     .forEach(serviceDir -> {
-                         String serviceName = serviceDir.getFileName().toString();
-                         
-                         if (isValidServiceName(serviceName)) {
-                             boolean hasDockerfile = checkDockerfileExists(serviceDir);
-                             
-                             if (hasDockerfile) {
-                                 Integer portNumber = parseDockerfileExposePorts(serviceDir);
-                                 
-                                 ServiceScanResultDto.ServiceInfo serviceInfo = ServiceScanResultDto.ServiceInfo.builder()
-                                         .name(serviceName)
-                                         .path(serviceDir.toString())
-                                         .dockerfileExists(true)
-                                         .portNumber(portNumber)
-                                         .build();
-                                 
-                                 services.add(serviceInfo);
-                                 log.info("Valid service found: {} at {} (port: {})", serviceName, serviceDir, portNumber);
-                             } else {
-                                 log.warn("Service {} skipped: Dockerfile not found", serviceName);
-                             }
-                         } else {
-                             log.warn("Service {} skipped: Invalid name (must be lowercase alphanumeric, ≤20 chars)", serviceName);
-                         }
-                     });
+            if (dockerfile == null) {
+                log.warn("Service {} skipped: Dockerfile not found", serviceName);
+                return;
+            }
+
+            Integer portNumber = parseExposePort(serviceName, dockerfile);
+            List<String> baseImages = DockerfileParser.parse(dockerfile).baseImages().stream()
+                    .filter(image -> siblingService(image, serviceNames) == null)
+                    .toList();
+
+            String path = SERVICES_DIR + "/" + serviceName;
+            services.add(ServiceScanResultDto.ServiceInfo.builder()
+                    .name(serviceName)
+                    .path(path)
+                    .dockerfileExists(true)
+                    .portNumber(portNumber)
+                    .baseImages(baseImages)
+                    .build());
+            log.info("Valid service found: {} at {} (port: {})", serviceName, path, portNumber);
+        });
+
+        log.info("Service scan completed. Found {} valid services", services.size());
+
+        return ServiceScanResultDto.builder()
+                .services(services)
+                .build();
+    }
+
+    /**
+     * @return directory name -> Dockerfile content (null without a Dockerfile) for every
+     *         directory under services/
+     */
+    private Map<String, String> readServiceDirectories(Repository repository, ObjectId treeId) {
+        Map<String, String> directories = new TreeMap<>();
+        try (ObjectReader reader = repository.newObjectReader();
+             TreeWalk servicesWalk = TreeWalk.forPath(reader, SERVICES_DIR, treeId)) {
+            if (servicesWalk == null || servicesWalk.getFileMode(0) != FileMode.TREE) {
+                throw new RuntimeException("Services directory not found: /" + SERVICES_DIR);
+            }
+
+            try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                treeWalk.addTree(servicesWalk.getObjectId(0));
+                while (treeWalk.next()) {
+                    if (treeWalk.getFileMode(0) == FileMode.TREE) {
+                        directories.put(treeWalk.getNameString(), readDockerfileBlob(reader, treeWalk.getObjectId(0)));
+                    }
+                }
             }
-            
-            log.info("Service scan completed. Found {} valid services", services.size());
-            
-            return ServiceScanResultDto.builder()
-                    .services(services)
-                    .build();
-                    
         } catch (IOException e) {
-            log.error("Failed to scan services directory: {}", e.getMessage());
+            log.error("Failed to scan services tree: {}", e.getMessage());
             throw new RuntimeException("Service scan failed: " + e.getMessage(), e);
         }
+        return directories;
+    }
+
+    private String readDockerfileBlob(ObjectReader reader, ObjectId serviceTreeId) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, "Dockerfile", serviceTreeId)) {
+            if (treeWalk == null || (treeWalk.getFileMode(0) != FileMode.REGULAR_FILE
+                    && treeWalk.getFileMode(0) != FileMode.EXECUTABLE_FILE)) {
+                return null;
+            }
+            return new String(reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes(), StandardCharsets.UTF_8);
+        }
     }
     
     private boolean isValidServiceName(String serviceName) {
         return serviceName != null && SERVICE_NAME_PATTERN.matcher(serviceName).matches();
     }
     
-    private boolean checkDockerfileExists(Path serviceDir) {
-        Path dockerfile = serviceDir.resolve("Dockerfile");
-        return Files.exists(dockerfile) && Files.isRegularFile(dockerfile);
+    private Integer parseExposePort(String serviceName, String dockerfile) {
+        for (String line : dockerfile.split("\\R")) {
+            String trimmedLine = line.trim();
+
+            // Skip comments
+            if (trimmedLine.startsWith("#")) {
+                continue;
+            }
+
+            Matcher matcher = EXPOSE_PATTERN.matcher(trimmedLine);
+            if (matcher.matches()) {
+                String portStr = matcher.group(1);
+                try {
+                    int port = Integer.parseInt(portStr);
+                    if (port > 0 && port <= 65535) {
+                        log.debug("Found EXPOSE port {} in {}/Dockerfile", port, serviceName);
+                        return port;
+                    } else {
+                        log.warn("Invalid port number {} in {}/Dockerfile (must be 1-65535)", port, serviceName);
+                    }
+                } catch (NumberFormatException e) {
+                    log.warn("Failed to parse port number '{}' in {}/Dockerfile", portStr, serviceName);
+                }
+            }
+        }
+
+        log.debug("No EXPOSE directive found in {}/Dockerfile", serviceName);
+        return null;
     }
-    
-    private Integer parseDockerfileExposePorts(Path serviceDir) {
-        Path dockerfile = serviceDir.resolve("Dockerfile");
-        
-        try {
-            List<String> lines = Files.readAllLines(dockerfile, StandardCharsets.UTF_8);
-            
-            for (String line : lines) {
-                String trimmedLine = line.trim();
-                
-                // Skip comments
-                if (trimmedLine.startsWith("#")) {
-                    continue;
+
+    /**
+     * Plans the builds of all services of a repository. A service depends on another when its
+     * Dockerfile names the other service (FROM base, COPY --from=base); Dockerfiles starting with
+     * the same instructions before the first COPY/ADD share that prefix as a stage built once.
+     * The Dockerfiles are read from the given commit tree.
+     */
+    public BuildGraphDto buildGraph(Repository repository, ObjectId treeId) {
+        return buildGraph(readServiceDirectories(repository, treeId));
+    }
+
+    private BuildGraphDto buildGraph(Map<String, String> directories) {
+        Map<String, DockerfileParser.Dockerfile> dockerfiles = new TreeMap<>();
+        directories.forEach((service, dockerfile) -> {
+            if (isValidServiceName(service) && dockerfile != null) {
+                dockerfiles.put(service, DockerfileParser.parse(dockerfile));
+            }
+        });
+
+        Map<String, Map<String, String>> dependencies = new HashMap<>();
+        Map<String, List<String>> baseImages = new HashMap<>();
+        dockerfiles.forEach((service, dockerfile) -> {
+            Map<String, String> serviceDependencies = new LinkedHashMap<>();
+            for (String reference : dockerfile.externalReferences()) {
+                String sibling = siblingService(reference, dockerfiles.keySet());
+                if (sibling != null && !sibling.equals(service)) {
+                    serviceDependencies.put(reference, sibling);
                 }
-                
-                Matcher matcher = EXPOSE_PATTERN.matcher(trimmedLine);
-                if (matcher.matches()) {
-                    String portStr = matcher.group(1);
-                    try {
-                        int port = Integer.parseInt(portStr);
-                        if (port > 0 && port <= 65535) {
-                            log.debug("Found EXPOSE port {} in {}/Dockerfile", port, serviceDir.getFileName());
-                            return port;
-                        } else {
-                            log.warn("Invalid port number {} in {}/Dockerfile (must be 1-65535)", port, serviceDir.getFileName());
-                        }
-                    } catch (NumberFormatException e) {
-                        log.warn("Failed to parse port number '{}' in {}/Dockerfile", portStr, serviceDir.getFileName());
-                    }
+            }
+            dependencies.put(service, serviceDependencies);
+            baseImages.put(service, dockerfile.baseImages().stream()
+                    .filter(image -> siblingService(image, dockerfiles.keySet()) == null)
+                    .toList());
+        });
+
+        List<String> buildOrder = sortTopologically(dependencies);
+        List<BuildGraphDto.SharedStage> sharedStages = findSharedStages(dockerfiles, dependencies);
+
+        log.info("Build graph: order {}, dependencies {}, {} shared stages", buildOrder,
+                dependencies.entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).toList(),
+                sharedStages.size());
+
+        return BuildGraphDto.builder()
+                .buildOrder(buildOrder)
+                .dependencies(dependencies)
+                .baseImages(baseImages)
+                .sharedStages(sharedStages)
+                .build();
+    }
+
+    // "base" and "base:latest" name the image of services/base
+    private String siblingService(String reference, Set<String> services) {
+        String name = reference.endsWith(":latest") ? reference.substring(0, reference.length() - ":latest".length()) : reference;
+        return services.contains(name) ? name : null;
+    }
+
+    /**
+     * Kahn's algorithm. Services on a dependency cycle lose their service dependencies (and are
+     * built in name order) so the rest of the repository still builds.
+     */
+    private List<String> sortTopologically(Map<String, Map<String, String>> dependencies) {
+        Map<String, Integer> pending = new TreeMap<>();
+        dependencies.forEach((service, deps) -> pending.put(service, new HashSet<>(deps.values()).size()));
+
+        List<String> order = new ArrayList<>();
+        Deque<String> ready = new ArrayDeque<>();
+        pending.forEach((service, count) -> {
+            if (count == 0) {
+                ready.add(service);
+            }
+        });
+
+        while (!ready.isEmpty()) {
+            String service = ready.poll();
+            order.add(service);
+            for (String dependent : pending.keySet()) {
+                if (dependencies.get(dependent).containsValue(service) && pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
                 }
             }
-            
-            log.debug("No EXPOSE directive found in {}/Dockerfile", serviceDir.getFileName());
-            return null;
-            
-        } catch (IOException e) {
-            log.warn("Failed to read Dockerfile in {}: {}", serviceDir, e.getMessage());
-            return null;
+        }
+
+        if (order.size() < dependencies.size()) {
+            List<String> cyclic = pending.keySet().stream().filter(service -> !order.contains(service)).toList();
+            log.warn("Dependency cycle between services {}, building them independently", cyclic);
+            cyclic.forEach(service -> dependencies.put(service, Map.of()));
+            order.addAll(cyclic);
+        }
+        return order;
+    }
+
+    /**
+     * Finds stage prefixes several Dockerfiles have in common: the same global ARGs, FROM and
+     * instructions up to the first one reading the build context. Each service is assigned the
+     * longest such prefix; a prefix that another assigned prefix extends is dropped, as building
+     * the longer one leaves the shorter one's layers in the cache as well.
+     */
+    private List<BuildGraphDto.SharedStage> findSharedStages(Map<String, DockerfileParser.Dockerfile> dockerfiles,
+                                                            Map<String, Map<String, String>> dependencies) {
+        Map<List<String>, Set<String>> candidates = new HashMap<>();
+        dockerfiles.forEach((service, dockerfile) -> {
+            for (List<String> prefix : contextFreePrefixes(dockerfile, dependencies.get(service))) {
+                candidates.computeIfAbsent(prefix, key -> new TreeSet<>()).add(service);
+            }
+        });
+        candidates.values().removeIf(services -> services.size() < 2);
+
+        Map<String, List<String>> assigned = new TreeMap<>();
+        candidates.forEach((prefix, services) -> services.forEach(service -> assigned.merge(service, prefix,
+                (current, candidate) -> candidate.size() > current.size() ? candidate : current)));
+
+        Set<List<String>> chosen = new HashSet<>(assigned.values());
+        Map<List<String>, List<String>> stageServices = new LinkedHashMap<>();
+        assigned.forEach((service, prefix) -> {
+            List<String> stage = chosen.stream()
+                    .filter(other -> other.size() >= prefix.size() && other.subList(0, prefix.size()).equals(prefix))
+                    .max(Comparator.comparingInt(List::size))
+                    .orElse(prefix);
+            stageServices.computeIfAbsent(stage, key -> new ArrayList<>()).add(service);
+        });
+
+        List<BuildGraphDto.SharedStage> sharedStages = new ArrayList<>();
+        stageServices.forEach((lines, services) -> {
+            String dockerfile = String.join("\n", lines) + "\n";
+            sharedStages.add(BuildGraphDto.SharedStage.builder()
+                    .id(sha256(dockerfile).substring(0, 12))
+                    .dockerfile(dockerfile)
+                    .services(services)
+                    .build());
+        });
+        return sharedStages;
+    }
+
+    /**
+     * @return for each stage starting from a registry image, every prefix ending in a RUN
+     *         instruction before the first instruction that reads the build context
+     */
+    private List<List<String>> contextFreePrefixes(DockerfileParser.Dockerfile dockerfile, Map<String, String> serviceDependencies) {
+        List<List<String>> prefixes = new ArrayList<>();
+        Set<String> baseImages = new HashSet<>(dockerfile.baseImages());
+
+        for (DockerfileParser.Stage stage : dockerfile.stages()) {
+            if (!baseImages.contains(stage.image()) || serviceDependencies.containsKey(stage.image())) {
+                continue;
+            }
+
+            List<String> lines = new ArrayList<>(dockerfile.globalArgLines());
+            lines.add(stage.fromLine());
+            for (String instruction : stage.instructions()) {
+                String keyword = instruction.split("\\s+", 2)[0].toUpperCase();
+                if (CONTEXT_INSTRUCTIONS.contains(keyword) || instruction.contains("type=bind")) {
+                    break;
+                }
+                lines.add(instruction);
+                if (keyword.equals("RUN")) {
+                    prefixes.add(List.copyOf(lines));
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    private String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
-}
\ No newline at end of file
+}
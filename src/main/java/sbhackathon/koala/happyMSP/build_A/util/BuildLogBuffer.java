@@ -0,0 +1,108 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log of a single image build. Only the most recent lines (up to maxChars) stay on the heap;
+ * every line is also spilled to a gzip file and handed to an optional live listener.
+ */
+public class BuildLogBuffer implements AutoCloseable {
+
+    private final String buildId;
+    private final int maxChars;
+    private final Path spillFile;
+    private final Writer spillWriter;
+    private final Consumer<String> listener;
+
+    private final Deque<String> lines = new ArrayDeque<>();
+    private int size = 0;
+    private long totalLines = 0;
+    private boolean closed = false;
+
+    public BuildLogBuffer(String buildId, int maxChars, Path spillFile, Consumer<String> listener) throws IOException {
+        this.buildId = buildId;
+        this.maxChars = maxChars;
+        this.spillFile = spillFile;
+        this.listener = listener;
+        Files.createDirectories(spillFile.getParent());
+        this.spillWriter = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(spillFile)), StandardCharsets.UTF_8));
+    }
+
+    public void append(String line) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                spillWriter.write(line);
+                spillWriter.write('\n');
+            } catch (IOException ignored) {
+                // The in-memory tail is still available if the spill file cannot be written
+            }
+
+            String retained = line.length() > maxChars ? line.substring(line.length() - maxChars) : line;
+            lines.addLast(retained);
+            size += retained.length() + 1;
+            totalLines++;
+            while (size > maxChars && lines.size() > 1) {
+                size -= lines.removeFirst().length() + 1;
+            }
+        }
+
+        // Outside the lock so a slow listener never blocks readers of the tail
+        if (listener != null) {
+            listener.accept(line);
+        }
+    }
+
+    /**
+     * @return the retained tail of the log, oldest line first
+     */
+    public synchronized String tail() {
+        StringBuilder sb = new StringBuilder(size);
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public synchronized long getTotalLines() {
+        return totalLines;
+    }
+
+    public String getBuildId() {
+        return buildId;
+    }
+
+    public Path getSpillFile() {
+        return spillFile;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            spillWriter.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
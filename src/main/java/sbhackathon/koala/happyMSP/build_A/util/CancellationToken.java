@@ -0,0 +1,71 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation signal of one build job. Processes registered while the job runs (docker build)
+ * are killed together with their children when the job is cancelled, and registered Docker
+ * Engine API connections are closed, which makes the daemon abort the request.
+ */
+public class CancellationToken {
+
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final Set<Closeable> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+
+    public void register(Process process) {
+        processes.add(process);
+        // Cancelled between the check and the start of the process
+        if (cancelled) {
+            kill(process);
+        }
+    }
+
+    public void unregister(Process process) {
+        processes.remove(process);
+    }
+
+    public void register(Closeable connection) {
+        connections.add(connection);
+        if (cancelled) {
+            close(connection);
+        }
+    }
+
+    public void unregister(Closeable connection) {
+        connections.remove(connection);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        processes.forEach(CancellationToken::kill);
+        connections.forEach(CancellationToken::close);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Build superseded by a newer commit");
+        }
+    }
+
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static void close(Closeable connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
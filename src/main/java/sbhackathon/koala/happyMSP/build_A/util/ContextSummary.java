@@ -0,0 +1,66 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * What a docker build sends to the daemon as its context.
+ *
+ * @param files                 regular files in the context
+ * @param bytes                 total size of those files
+ * @param topContributors       largest top-level entries of the context (e.g. node_modules) by size, largest first
+ * @param defaultIgnoreApplied  true if the directory had no .dockerignore and the default ignore set was used
+ */
+public record ContextSummary(int files, long bytes, Map<String, Long> topContributors, boolean defaultIgnoreApplied) {
+
+    private static final int TOP_CONTRIBUTORS = 5;
+
+    /**
+     * @return e.g. "12.3 MB in 420 files (largest: node_modules 11.0 MB, src 1.2 MB)"
+     */
+    public String describe() {
+        String largest = topContributors.entrySet().stream()
+                .map(entry -> entry.getKey() + " " + formatBytes(entry.getValue()))
+                .collect(Collectors.joining(", "));
+        return formatBytes(bytes) + " in " + files + " files"
+                + (largest.isEmpty() ? "" : " (largest: " + largest + ")")
+                + (defaultIgnoreApplied ? ", default .dockerignore applied" : "");
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    /**
+     * Adds up the files of a context while it is walked.
+     */
+    static final class Collector {
+        private int files = 0;
+        private long bytes = 0;
+        private final Map<String, Long> bytesByEntry = new HashMap<>();
+
+        void add(String path, long size) {
+            files++;
+            bytes += size;
+            int slash = path.indexOf('/');
+            bytesByEntry.merge(slash > 0 ? path.substring(0, slash) + "/" : path, size, Long::sum);
+        }
+
+        ContextSummary finish(boolean defaultIgnoreApplied) {
+            Map<String, Long> top = new LinkedHashMap<>();
+            bytesByEntry.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(TOP_CONTRIBUTORS)
+                    .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+            return new ContextSummary(files, bytes, top, defaultIgnoreApplied);
+        }
+    }
+}
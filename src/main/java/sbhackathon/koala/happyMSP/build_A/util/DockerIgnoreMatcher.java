@@ -0,0 +1,134 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches build context paths against .dockerignore rules the way the docker CLI does: patterns
+ * use filepath.Match syntax plus {@code **}, a pattern also excludes everything below a matching
+ * directory, and the last matching rule wins, so {@code !pattern} re-includes paths.
+ */
+public final class DockerIgnoreMatcher {
+
+    public static final DockerIgnoreMatcher NONE = new DockerIgnoreMatcher(List.of());
+
+    private record Rule(Pattern pattern, boolean exception) {}
+
+    private final List<Rule> rules;
+
+    private DockerIgnoreMatcher(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    public static DockerIgnoreMatcher parse(String content) {
+        List<Rule> rules = new ArrayList<>();
+        for (String line : content.split("\\R")) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+
+            boolean exception = pattern.startsWith("!");
+            if (exception) {
+                pattern = pattern.substring(1).trim();
+            }
+            pattern = clean(pattern);
+            if (!pattern.isEmpty()) {
+                rules.add(new Rule(toRegex(pattern), exception));
+            }
+        }
+        return new DockerIgnoreMatcher(List.copyOf(rules));
+    }
+
+    public static DockerIgnoreMatcher of(List<String> patterns) {
+        return parse(String.join("\n", patterns));
+    }
+
+    /**
+     * @param path slash-separated path relative to the context root, e.g. "src/main.go"
+     */
+    public boolean isExcluded(String path) {
+        boolean excluded = false;
+        for (Rule rule : rules) {
+            if (matchesOrParentMatches(rule.pattern(), path)) {
+                excluded = !rule.exception();
+            }
+        }
+        return excluded;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @return true if an excluded directory can be skipped as a whole; with a {@code !} rule a
+     *         path below it may be included again
+     */
+    public boolean canSkipExcludedDirectories() {
+        return rules.stream().noneMatch(Rule::exception);
+    }
+
+    private static boolean matchesOrParentMatches(Pattern pattern, String path) {
+        if (pattern.matcher(path).matches()) {
+            return true;
+        }
+        for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+            if (pattern.matcher(path.substring(0, slash)).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "/node_modules/", "./dist" and "dist" all name the same path
+    private static String clean(String pattern) {
+        String cleaned = pattern.replaceAll("/+", "/");
+        while (cleaned.startsWith("./")) {
+            cleaned = cleaned.substring(2);
+        }
+        if (cleaned.startsWith("/")) {
+            cleaned = cleaned.substring(1);
+        }
+        if (cleaned.endsWith("/")) {
+            cleaned = cleaned.substring(0, cleaned.length() - 1);
+        }
+        return cleaned.equals(".") ? "" : cleaned;
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                i++;
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '/') {
+                    // "**/" also matches no directory at all
+                    i++;
+                    regex.append("(?:.*/)?");
+                } else {
+                    regex.append(".*");
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[') {
+                int end = pattern.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                    continue;
+                }
+                String set = pattern.substring(i + 1, end);
+                regex.append('[').append(set.startsWith("^") || set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
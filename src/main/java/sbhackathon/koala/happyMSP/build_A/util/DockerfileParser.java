@@ -0,0 +1,176 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a Dockerfile into its build stages, as far as needed to plan builds: which images the
+ * stages start from, which stages they copy from, and the instructions of each stage.
+ */
+public final class DockerfileParser {
+
+    private static final Pattern ARG_PATTERN = Pattern.compile("^ARG\\s+([A-Za-z_][A-Za-z0-9_]*)(?:=(\\S*))?.*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FROM_PATTERN = Pattern.compile("^FROM\\s+(?:--\\S+\\s+)*(\\S+)(?:\\s+AS\\s+(\\S+))?.*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COPY_FROM_PATTERN = Pattern.compile("^COPY\\s+.*--from=(\\S+).*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{([A-Za-z_][A-Za-z0-9_]*)(?::-([^}]*))?}|\\$([A-Za-z_][A-Za-z0-9_]*)");
+
+    /**
+     * @param fromLine     the FROM instruction as written, without the stage name
+     * @param image        the FROM reference with global ARGs substituted
+     * @param alias        the stage name, or null
+     * @param instructions the instructions after FROM, continuation lines joined
+     */
+    public record Stage(String fromLine, String image, String alias, List<String> instructions) {}
+
+    /**
+     * @param globalArgLines ARG instructions before the first FROM, as written
+     */
+    public record Dockerfile(List<String> globalArgLines, List<Stage> stages) {
+
+        /**
+         * @return registry images the stages start from, excluding earlier stages, scratch and
+         *         references with an unresolved variable
+         */
+        public List<String> baseImages() {
+            Set<String> images = new LinkedHashSet<>();
+            Set<String> stageNames = new HashSet<>();
+            for (Stage stage : stages) {
+                if (isExternal(stage.image(), stageNames)) {
+                    images.add(stage.image());
+                }
+                if (stage.alias() != null) {
+                    stageNames.add(stage.alias().toLowerCase());
+                }
+            }
+            return new ArrayList<>(images);
+        }
+
+        /**
+         * @return base images plus images named by COPY --from, i.e. everything the build pulls
+         *         in from outside this Dockerfile
+         */
+        public List<String> externalReferences() {
+            Set<String> references = new LinkedHashSet<>(baseImages());
+            Set<String> stageNames = new HashSet<>();
+            for (Stage stage : stages) {
+                if (stage.alias() != null) {
+                    stageNames.add(stage.alias().toLowerCase());
+                }
+            }
+            for (Stage stage : stages) {
+                for (String instruction : stage.instructions()) {
+                    Matcher matcher = COPY_FROM_PATTERN.matcher(instruction);
+                    // --from=0 refers to a stage by index
+                    if (matcher.matches() && !matcher.group(1).matches("\\d+")
+                            && isExternal(matcher.group(1), stageNames)) {
+                        references.add(matcher.group(1));
+                    }
+                }
+            }
+            return new ArrayList<>(references);
+        }
+
+        private static boolean isExternal(String image, Set<String> stageNames) {
+            return !image.isEmpty() && !image.contains("$") && !image.equalsIgnoreCase("scratch")
+                    && !stageNames.contains(image.toLowerCase());
+        }
+    }
+
+    private DockerfileParser() {
+    }
+
+    public static Dockerfile parse(String content) {
+        List<String> globalArgLines = new ArrayList<>();
+        Map<String, String> globalArgs = new HashMap<>();
+        List<Stage> stages = new ArrayList<>();
+
+        String fromLine = null;
+        String image = null;
+        String alias = null;
+        List<String> instructions = new ArrayList<>();
+
+        for (String line : joinContinuations(content.split("\\R"))) {
+            Matcher fromMatcher = FROM_PATTERN.matcher(line);
+            if (fromMatcher.matches()) {
+                if (fromLine != null) {
+                    stages.add(new Stage(fromLine, image, alias, List.copyOf(instructions)));
+                }
+                alias = fromMatcher.group(2);
+                fromLine = line.substring(0, fromMatcher.end(1));
+                image = substitute(fromMatcher.group(1), globalArgs);
+                instructions.clear();
+                continue;
+            }
+
+            if (fromLine == null) {
+                Matcher argMatcher = ARG_PATTERN.matcher(line);
+                if (argMatcher.matches()) {
+                    // Only ARGs before the first FROM are visible to FROM lines
+                    globalArgLines.add(line);
+                    globalArgs.put(argMatcher.group(1), argMatcher.group(2) != null ? unquote(argMatcher.group(2)) : "");
+                }
+                continue;
+            }
+            instructions.add(line);
+        }
+        if (fromLine != null) {
+            stages.add(new Stage(fromLine, image, alias, List.copyOf(instructions)));
+        }
+
+        return new Dockerfile(List.copyOf(globalArgLines), List.copyOf(stages));
+    }
+
+    private static List<String> joinContinuations(String[] lines) {
+        List<String> instructions = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : lines) {
+            String trimmedLine = line.trim();
+            if (trimmedLine.startsWith("#") || trimmedLine.isEmpty()) {
+                continue;
+            }
+            if (trimmedLine.endsWith("\\")) {
+                current.append(trimmedLine, 0, trimmedLine.length() - 1).append(' ');
+                continue;
+            }
+            current.append(trimmedLine);
+            instructions.add(current.toString().trim());
+            current.setLength(0);
+        }
+        if (current.length() > 0) {
+            instructions.add(current.toString().trim());
+        }
+        return instructions;
+    }
+
+    private static String substitute(String value, Map<String, String> args) {
+        Matcher matcher = VARIABLE_PATTERN.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String name = matcher.group(1) != null ? matcher.group(1) : matcher.group(3);
+            String replacement = args.get(name);
+            if (replacement == null || replacement.isEmpty()) {
+                replacement = matcher.group(2);
+            }
+            // Keep the variable when it has no value so the reference is recognized as unresolved
+            matcher.appendReplacement(result, Matcher.quoteReplacement(
+                    replacement != null ? replacement : matcher.group()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+                || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
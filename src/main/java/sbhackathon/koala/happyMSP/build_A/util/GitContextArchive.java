@@ -0,0 +1,136 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Writes a directory of a commit as a docker build context tar, reading trees and blobs straight
+ * from the object database, so a build needs no checked-out working tree. Paths excluded by the
+ * directory's .dockerignore are left out, as the docker CLI would; a directory without one gets
+ * the default ignore set.
+ */
+public final class GitContextArchive {
+
+    // Fixed timestamp so the same tree always produces the same archive
+    private static final Date MOD_TIME = new Date(0);
+
+    private GitContextArchive() {
+    }
+
+    @FunctionalInterface
+    private interface EntryVisitor {
+        void visit(String path, FileMode mode, ObjectId objectId) throws IOException;
+    }
+
+    /**
+     * Sizes the context without reading any file content, to report it before the build.
+     *
+     * @param defaultIgnore applied if the directory has no .dockerignore
+     */
+    public static ContextSummary measure(Repository repository, ObjectId treeId, DockerIgnoreMatcher defaultIgnore) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            DockerIgnoreMatcher ignore = readDockerIgnore(reader, treeId);
+            ContextSummary.Collector collector = new ContextSummary.Collector();
+            walk(reader, treeId, ignore != null ? ignore : defaultIgnore, (path, mode, objectId) -> {
+                if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                    collector.add(path, reader.getObjectSize(objectId, Constants.OBJ_BLOB));
+                }
+            });
+            return collector.finish(ignore == null && !defaultIgnore.isEmpty());
+        }
+    }
+
+    /**
+     * @param treeId        the tree of the context directory, e.g. services/order
+     * @param defaultIgnore applied if the directory has no .dockerignore
+     * @param out           receives the tar; not closed
+     */
+    public static ContextSummary write(Repository repository, ObjectId treeId, DockerIgnoreMatcher defaultIgnore,
+                                       OutputStream out) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            DockerIgnoreMatcher ignore = readDockerIgnore(reader, treeId);
+
+            TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+            ContextSummary.Collector collector = new ContextSummary.Collector();
+            walk(reader, treeId, ignore != null ? ignore : defaultIgnore, (path, mode, objectId) -> {
+                if (mode == FileMode.TREE) {
+                    TarArchiveEntry entry = new TarArchiveEntry(path + "/");
+                    entry.setMode(0755);
+                    entry.setModTime(MOD_TIME);
+                    tar.putArchiveEntry(entry);
+                    tar.closeArchiveEntry();
+                } else if (mode == FileMode.SYMLINK) {
+                    TarArchiveEntry entry = new TarArchiveEntry(path, TarArchiveEntry.LF_SYMLINK);
+                    entry.setLinkName(new String(reader.open(objectId).getBytes(), StandardCharsets.UTF_8));
+                    entry.setModTime(MOD_TIME);
+                    tar.putArchiveEntry(entry);
+                    tar.closeArchiveEntry();
+                } else if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                    ObjectLoader blob = reader.open(objectId, Constants.OBJ_BLOB);
+                    TarArchiveEntry entry = new TarArchiveEntry(path);
+                    entry.setMode(mode == FileMode.EXECUTABLE_FILE ? 0755 : 0644);
+                    entry.setSize(blob.getSize());
+                    entry.setModTime(MOD_TIME);
+                    tar.putArchiveEntry(entry);
+                    blob.copyTo(tar);
+                    tar.closeArchiveEntry();
+                    collector.add(path, blob.getSize());
+                }
+                // Submodules are not part of the build context
+            });
+            tar.finish();
+            return collector.finish(ignore == null && !defaultIgnore.isEmpty());
+        }
+    }
+
+    // Visits the entries of the context that are not excluded, directories before their contents
+    private static void walk(ObjectReader reader, ObjectId treeId, DockerIgnoreMatcher ignore,
+                             EntryVisitor visitor) throws IOException {
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(treeId);
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                FileMode mode = treeWalk.getFileMode(0);
+                boolean excluded = !isAlwaysIncluded(path) && ignore.isExcluded(path);
+
+                if (mode == FileMode.TREE && (!excluded || !ignore.canSkipExcludedDirectories())) {
+                    treeWalk.enterSubtree();
+                }
+                if (!excluded) {
+                    visitor.visit(path, mode, treeWalk.getObjectId(0));
+                }
+            }
+        }
+    }
+
+    // The docker CLI sends the Dockerfile and .dockerignore even if .dockerignore excludes them
+    private static boolean isAlwaysIncluded(String path) {
+        return path.equals("Dockerfile") || path.equals(".dockerignore");
+    }
+
+    // null if the directory has no .dockerignore
+    private static DockerIgnoreMatcher readDockerIgnore(ObjectReader reader, ObjectId treeId) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, ".dockerignore", treeId)) {
+            if (treeWalk == null || treeWalk.getFileMode(0) != FileMode.REGULAR_FILE) {
+                return null;
+            }
+            return DockerIgnoreMatcher.parse(new String(
+                    reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -2,6 +2,13 @@ package sbhackathon.koala.happyMSP.build_A.util;
 
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
 @Component
 public class ImageTagGenerator {
 
@@ -17,6 +24,27 @@ public class ImageTagGenerator {
         return String.format("%s-%s:%s", normalizedRepoName, normalizedServiceName, shortSha);
     }
     
+    /**
+     * Builds the content-addressed cache key of a service image: the Git tree id of
+     * {@code services/<name>} plus the build args, so identical inputs map to the same image
+     * regardless of commit, branch or repository.
+     */
+    public String generateContentHash(String treeId, Map<String, String> buildArgs) {
+        if (treeId == null) {
+            throw new IllegalArgumentException("treeId cannot be null");
+        }
+
+        StringBuilder key = new StringBuilder("tree:").append(treeId).append('\n');
+        new TreeMap<>(buildArgs).forEach((name, value) -> key.append("arg:").append(name).append('=').append(value).append('\n'));
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
     public String generateWithRegistry(String registry, String repositoryName, String serviceName, String gitSha) {
         String baseTag = generate(repositoryName, serviceName, gitSha);
         if (registry == null || registry.isEmpty()) {
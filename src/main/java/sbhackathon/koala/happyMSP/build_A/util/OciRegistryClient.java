@@ -0,0 +1,112 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Minimal client for the OCI distribution API (/v2/...) of a single registry. Works against ECR
+ * (Basic auth with the ECR authorization token) as well as an unauthenticated local registry:2.
+ */
+public class OciRegistryClient {
+
+    public static final String OCI_MANIFEST = "application/vnd.oci.image.manifest.v1+json";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(10);
+
+    private final HttpClient httpClient;
+    private final URI baseUri;
+    private final String authorization;
+
+    /**
+     * @param baseUri       e.g. https://123456789012.dkr.ecr.ap-northeast-2.amazonaws.com or http://localhost:5000
+     * @param authorization value of the Authorization header, or null for an anonymous registry
+     */
+    public OciRegistryClient(HttpClient httpClient, URI baseUri, String authorization) {
+        this.httpClient = httpClient;
+        this.baseUri = baseUri;
+        this.authorization = authorization;
+    }
+
+    public boolean blobExists(String repository, String digest) throws IOException, InterruptedException {
+        HttpRequest request = request(baseUri.resolve("/v2/" + repository + "/blobs/" + digest))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 200) {
+            return true;
+        }
+        if (status == 404) {
+            return false;
+        }
+        throw new IOException("Unexpected status " + status + " checking blob " + digest + " in " + repository);
+    }
+
+    /**
+     * Uploads a blob, first asking the registry to mount it from another repository when a
+     * source is known. A registry that cannot mount answers with a regular upload session,
+     * which is then used for a monolithic upload.
+     *
+     * @return true if the blob was mounted instead of uploaded
+     */
+    public boolean uploadBlob(String repository, String digest, Path content, String mountFrom)
+            throws IOException, InterruptedException {
+        String query = mountFrom != null ? "?mount=" + digest + "&from=" + mountFrom : "";
+        HttpRequest start = request(baseUri.resolve("/v2/" + repository + "/blobs/uploads/" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> started = httpClient.send(start, HttpResponse.BodyHandlers.ofString());
+        if (started.statusCode() == 201 && mountFrom != null) {
+            return true;
+        }
+        if (started.statusCode() != 202) {
+            throw new IOException("Failed to start upload of " + digest + " to " + repository
+                    + ": " + started.statusCode() + " " + started.body());
+        }
+
+        String location = started.headers().firstValue("Location")
+                .orElseThrow(() -> new IOException("Upload session without Location for " + digest));
+        URI uploadUri = baseUri.resolve(location);
+        String separator = uploadUri.getQuery() == null ? "?" : "&";
+
+        HttpRequest put = request(URI.create(uploadUri + separator + "digest=" + digest))
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofFile(content))
+                .build();
+        HttpResponse<String> uploaded = httpClient.send(put, HttpResponse.BodyHandlers.ofString());
+        if (uploaded.statusCode() != 201) {
+            throw new IOException("Failed to upload " + digest + " to " + repository
+                    + ": " + uploaded.statusCode() + " " + uploaded.body());
+        }
+        return false;
+    }
+
+    /**
+     * @return the manifest digest reported by the registry
+     */
+    public String putManifest(String repository, String reference, byte[] manifest, String mediaType)
+            throws IOException, InterruptedException {
+        HttpRequest request = request(baseUri.resolve("/v2/" + repository + "/manifests/" + reference))
+                .header("Content-Type", mediaType)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(manifest))
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 201) {
+            throw new IOException("Failed to put manifest " + repository + ":" + reference
+                    + ": " + response.statusCode() + " " + response.body());
+        }
+        return response.headers().firstValue("Docker-Content-Digest").orElse(null);
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT);
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,75 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Build context of a checked-out service directory, sent by docker build . in that directory.
+ * The counterpart of {@link GitContextArchive} for the WORKTREE context source.
+ */
+public final class WorktreeContext {
+
+    private static final String DOCKERIGNORE = ".dockerignore";
+
+    private WorktreeContext() {
+    }
+
+    /**
+     * Writes the default ignore set as .dockerignore if the directory has none, so the docker CLI
+     * leaves those paths out of the context.
+     *
+     * @return true if a .dockerignore was written
+     */
+    public static boolean synthesizeDockerIgnore(Path contextDir, List<String> defaultIgnore) throws IOException {
+        Path dockerIgnore = contextDir.resolve(DOCKERIGNORE);
+        if (defaultIgnore.isEmpty() || Files.exists(dockerIgnore)) {
+            return false;
+        }
+        Files.writeString(dockerIgnore, "# Default ignore set added by HappyMSP\n" + String.join("\n", defaultIgnore) + "\n",
+                StandardCharsets.UTF_8);
+        return true;
+    }
+
+    /**
+     * Sizes the context the docker CLI would send, honoring the directory's .dockerignore.
+     */
+    public static ContextSummary measure(Path contextDir, boolean defaultIgnoreApplied) throws IOException {
+        Path dockerIgnore = contextDir.resolve(DOCKERIGNORE);
+        DockerIgnoreMatcher ignore = Files.isRegularFile(dockerIgnore)
+                ? DockerIgnoreMatcher.parse(Files.readString(dockerIgnore, StandardCharsets.UTF_8))
+                : DockerIgnoreMatcher.NONE;
+
+        ContextSummary.Collector collector = new ContextSummary.Collector();
+        Files.walkFileTree(contextDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(contextDir)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                boolean excluded = ignore.isExcluded(relativePath(dir));
+                return excluded && ignore.canSkipExcludedDirectories() ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String path = relativePath(file);
+                boolean alwaysIncluded = path.equals("Dockerfile") || path.equals(DOCKERIGNORE);
+                if (attrs.isRegularFile() && (alwaysIncluded || !ignore.isExcluded(path))) {
+                    collector.add(path, attrs.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String relativePath(Path path) {
+                return contextDir.relativize(path).toString().replace('\\', '/');
+            }
+        });
+        return collector.finish(defaultIgnoreApplied);
+    }
+}
@@ -0,0 +1,95 @@
+package sbhackathon.koala.happyMSP.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildBackend;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@ToString
+@Table(name = "build_job", indexes = {
+        @Index(name = "idx_build_job_status", columnList = "status, priority, id"),
+        @Index(name = "idx_build_job_repository", columnList = "repository_id, status")
+})
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class BuildJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private long id;
+
+    @Column(name = "repository_id", nullable = false)
+    private int repositoryId;
+
+    @Column(name = "repository_url", nullable = false)
+    private String repositoryUrl;
+
+    // Full SHA, so the worker can fetch exactly this commit; jobs queued before may hold 7 characters
+    @Column(name = "commit_sha", nullable = false)
+    private String commitSha;
+
+    // Last deployed commit when the job was queued; kept when a newer commit supersedes the job
+    @Column(name = "previous_commit")
+    private String previousCommit;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "build_backend", nullable = false)
+    private BuildBackend buildBackend;
+
+    @Column(name = "priority", nullable = false)
+    private int priority;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private BuildJobStatus status = BuildJobStatus.QUEUED;
+
+    @Column(name = "worker_id")
+    private String workerId;
+
+    // Number of times a worker claimed the job; bounds retries of jobs that crash their worker
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Set when a newer commit arrives while the job runs; the worker owning the job cancels it
+    @Column(name = "cancel_requested", nullable = false)
+    private boolean cancelRequested;
+
+    // Refreshed by the running worker; a stale heartbeat means the worker died
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Builder
+    public BuildJob(int repositoryId, String repositoryUrl, String commitSha, String previousCommit,
+                    BuildBackend buildBackend, int priority) {
+        this.repositoryId = repositoryId;
+        this.repositoryUrl = repositoryUrl;
+        this.commitSha = commitSha;
+        this.previousCommit = previousCommit;
+        this.buildBackend = buildBackend;
+        this.priority = priority;
+        this.status = BuildJobStatus.QUEUED;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public void finish(BuildJobStatus status, String errorMessage) {
+        this.status = status;
+        this.errorMessage = errorMessage != null && errorMessage.length() > 1000
+                ? errorMessage.substring(0, 1000)
+                : errorMessage;
+        this.finishedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,20 @@
+package sbhackathon.koala.happyMSP.entity;
+
+public enum BuildJobStatus {
+    QUEUED("대기중"),
+    RUNNING("실행중"),
+    SUCCEEDED("완료"),
+    FAILED("실패"),
+    // A newer commit of the same repository replaced this job (while queued or by cancelling it)
+    SUPERSEDED("대체됨");
+
+    private final String description;
+
+    BuildJobStatus(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
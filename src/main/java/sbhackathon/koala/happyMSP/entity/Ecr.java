@@ -26,6 +26,18 @@ public class Ecr {
     @Column(name = "tag", nullable = false)
     private String tag;
 
+    // Hash of the service's Git tree (and build args) the image was built from
+    @Column(name = "content_hash")
+    private String contentHash;
+
+    // Build context size of the image's build, tracked to catch contexts growing; null for reused images
+    @Column(name = "context_bytes")
+    private Long contextBytes;
+
+    // Commit of the service's repository the image was built or reused for; a later commit diffs against it to tell whether the service changed
+    @Column(name = "source_commit")
+    private String sourceCommit;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "service_id", nullable = false)
     private Service service;
@@ -27,6 +27,14 @@ public class Service {
     @Column(name = "port_number")
     private Integer portNumber;
 
+    // Build job that registered this service row; null for rows created before the job queue
+    @Column(name = "build_job_id")
+    private Long buildJobId;
+
+    // Build log of the service's last docker build, served by /build-logs/{buildId}; null until a build started
+    @Column(name = "build_id")
+    private String buildId;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "status")
     private ServiceStatus status = ServiceStatus.PENDING;
@@ -39,8 +47,10 @@ public class Service {
     private List<Ecr> ecrs = new ArrayList<>();
 
     @Builder
-    public Service(String name, String address, Repository repository, Integer portNumber, ServiceStatus status) {
+    public Service(String name, String address, Repository repository, Integer portNumber, ServiceStatus status,
+                   Long buildJobId) {
         this.name = name;
+        this.buildJobId = buildJobId;
         this.address = address;
         this.repository = repository;
         this.portNumber = portNumber;
@@ -54,4 +64,8 @@ public class Service {
     public void updateAddress(String address) {
         this.address = address;
     }
+
+    public void updateBuildId(String buildId) {
+        this.buildId = buildId;
+    }
 }
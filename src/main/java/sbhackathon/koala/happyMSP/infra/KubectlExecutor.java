@@ -2,19 +2,31 @@ package sbhackathon.koala.happyMSP.infra;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.time.Duration;
+import java.util.List;
 
 @Component
 public class KubectlExecutor {
 
     private static final Logger logger = LoggerFactory.getLogger(KubectlExecutor.class);
 
+    private static final Duration APPLY_TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration VERSION_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ProcessRunner processRunner;
+
+    @Autowired
+    public KubectlExecutor(ProcessRunner processRunner) {
+        this.processRunner = processRunner;
+    }
+
     /**
      * kubectl apply -f - 명령을 실행하여 YAML을 적용합니다.
      *
@@ -25,53 +37,35 @@ public class KubectlExecutor {
         logger.info("kubectl apply 실행 시작");
         logger.debug("적용할 YAML:\n{}", yaml);
 
-        ProcessBuilder processBuilder = new ProcessBuilder("kubectl", "apply", "-f", "-");
-        processBuilder.redirectErrorStream(false);
-
         try {
-            Process process = processBuilder.start();
-
-            // YAML을 stdin으로 전달
-            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()))) {
-                writer.write(yaml);
-                writer.flush();
-            }
-
-            // 표준 출력 읽기
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                    logger.info("kubectl stdout: {}", line);
-                }
-            }
-
-            // 표준 에러 읽기
-            StringBuilder errorOutput = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    errorOutput.append(line).append("\n");
-                    logger.error("kubectl stderr: {}", line);
-                }
+            // stdout/stderr를 동시에 읽어 어느 한쪽 파이프가 가득 차도 멈추지 않음
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("kubectl", "apply", "-f", "-"))
+                    .stdin(yaml)
+                    .timeout(APPLY_TIMEOUT)
+                    .stdoutHandler(line -> logger.info("kubectl stdout: {}", line))
+                    .stderrHandler(line -> logger.error("kubectl stderr: {}", line))
+                    .build());
+
+            logger.info("kubectl apply 종료 코드: {} ({}ms)", result.getExitCode(), result.getDuration().toMillis());
+
+            if (result.isTimedOut()) {
+                String errorMessage = String.format("kubectl apply 시간 초과 (%d초)", APPLY_TIMEOUT.toSeconds());
+                logger.error(errorMessage);
+                throw new RuntimeException(errorMessage);
             }
 
-            // 프로세스 종료 대기
-            int exitCode = process.waitFor();
-            logger.info("kubectl apply 종료 코드: {}", exitCode);
-
-            if (exitCode != 0) {
+            if (result.getExitCode() != 0) {
                 String errorMessage = String.format(
                         "kubectl apply 실패 (exit code: %d). Error: %s",
-                        exitCode,
-                        errorOutput
+                        result.getExitCode(),
+                        result.getStderr()
                 );
                 logger.error(errorMessage);
                 throw new RuntimeException(errorMessage);
             }
 
-            logger.info("kubectl apply 성공: {}", output.toString().trim());
+            logger.info("kubectl apply 성공: {}", result.getStdout().trim());
 
         } catch (IOException e) {
             String errorMessage = "kubectl 프로세스 실행 중 IO 오류 발생: " + e.getMessage();
@@ -92,16 +86,17 @@ public class KubectlExecutor {
      */
     public boolean isKubectlAvailable() {
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder("kubectl", "version", "--client");
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of("kubectl", "version", "--client"))
+                    .mergeStderr(true)
+                    .timeout(VERSION_TIMEOUT)
+                    .build());
 
-            if (exitCode == 0) {
+            if (result.isSuccess()) {
                 logger.info("kubectl 명령 사용 가능");
                 return true;
             } else {
-                logger.warn("kubectl 명령 실행 실패 (exit code: {})", exitCode);
+                logger.warn("kubectl 명령 실행 실패 (exit code: {})", result.getExitCode());
                 return false;
             }
         } catch (Exception e) {
@@ -110,4 +105,3 @@ public class KubectlExecutor {
         }
     }
 }
-
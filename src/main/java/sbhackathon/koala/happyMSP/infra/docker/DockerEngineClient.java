@@ -0,0 +1,256 @@
+package sbhackathon.koala.happyMSP.infra.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Docker Engine API client talking to the daemon over its Unix socket, used instead of forking
+ * the docker CLI for builds, tags, pushes, inspects and image removal. Progress streams are
+ * parsed into {@link DockerProgressEvent}s, so callers get step numbers, layer progress, the
+ * built image id and the pushed digest instead of scraping CLI output.
+ */
+@Slf4j
+@Component
+public class DockerEngineClient {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path socketPath;
+    private final String apiVersion;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "docker-engine-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream body) throws IOException;
+    }
+
+    /**
+     * @param repoDigests registry digests of pushed or pulled images, e.g. repo@sha256:...
+     */
+    public record ImageInfo(String id, List<String> repoDigests) {}
+
+    public DockerEngineClient(@Value("${docker.engine.socket:/var/run/docker.sock}") String socketPath,
+                              @Value("${docker.engine.api-version:1.41}") String apiVersion) {
+        this.socketPath = Paths.get(socketPath);
+        this.apiVersion = apiVersion;
+    }
+
+    /**
+     * @return false when the daemon socket is not mounted, callers then fall back to the CLI
+     */
+    public boolean isAvailable() {
+        return Files.exists(socketPath);
+    }
+
+    public Optional<ImageInfo> inspectImage(String image) throws IOException {
+        return request("GET", "/images/" + image + "/json", Map.of(), (status, body) -> {
+            if (status == 404) {
+                return Optional.empty();
+            }
+            JsonNode node = readJson(status, body);
+            List<String> repoDigests = new ArrayList<>();
+            node.path("RepoDigests").forEach(digest -> repoDigests.add(digest.asText()));
+            return Optional.of(new ImageInfo(node.path("Id").asText(), repoDigests));
+        });
+    }
+
+    public void tagImage(String image, String repository, String tag) throws IOException {
+        request("POST", "/images/" + image + "/tag", Map.of("repo", repository, "tag", tag), this::readJson);
+    }
+
+    /**
+     * Builds an image from a context tar with the daemon's classic builder.
+     *
+     * @param query     build parameters, e.g. t (tag), dockerfile, buildargs
+     * @param context   writes the context tar
+     * @param onConnect receives the connection; closing it aborts the build
+     * @return the id of the built image
+     */
+    public String build(Map<String, String> query, BodyWriter context, Duration timeout, Consumer<Closeable> onConnect,
+                        Consumer<DockerProgressEvent> events) throws IOException {
+        String[] imageId = new String[1];
+        stream("POST", "/build", query, Map.of("Content-Type", "application/x-tar"), context, timeout, onConnect, event -> {
+            if (event.aux() != null && event.aux().hasNonNull("ID")) {
+                imageId[0] = event.aux().get("ID").asText();
+            }
+            events.accept(event);
+        });
+        if (imageId[0] == null) {
+            throw new DockerEngineException(200, "Build finished without an image id");
+        }
+        return imageId[0];
+    }
+
+    /**
+     * @param registryAuth X-Registry-Auth value, see {@link #registryAuth}
+     * @return the manifest digest of the pushed tag
+     */
+    public String pushImage(String repository, String tag, String registryAuth, Duration timeout,
+                            Consumer<DockerProgressEvent> events) throws IOException {
+        String[] digest = new String[1];
+        stream("POST", "/images/" + repository + "/push", Map.of("tag", tag), Map.of("X-Registry-Auth", registryAuth),
+                null, timeout, connection -> { }, event -> {
+                    if (event.aux() != null && event.aux().hasNonNull("Digest")) {
+                        digest[0] = event.aux().get("Digest").asText();
+                    }
+                    events.accept(event);
+                });
+        return digest[0];
+    }
+
+    public String registryAuth(String username, String password, String serverAddress) {
+        Map<String, String> auth = new LinkedHashMap<>();
+        auth.put("username", username);
+        auth.put("password", password);
+        auth.put("serveraddress", serverAddress);
+        try {
+            return Base64.getUrlEncoder().encodeToString(objectMapper.writeValueAsBytes(auth));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode registry auth", e);
+        }
+    }
+
+    /**
+     * Runs a request answered with a JSON progress stream. An error message in the stream is
+     * thrown as {@link DockerEngineException} after it was passed to the consumer.
+     */
+    private void stream(String method, String path, Map<String, String> query, Map<String, String> headers,
+                        BodyWriter body, Duration timeout, Consumer<Closeable> onConnect,
+                        Consumer<DockerProgressEvent> events) throws IOException {
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        try (UnixSocketHttp http = UnixSocketHttp.connect(socketPath)) {
+            onConnect.accept(http);
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+                timedOut.set(true);
+                closeQuietly(http);
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+            try {
+                sendIgnoringEarlyClose(http, method, path, query, headers, body);
+                InputStream response = http.receive();
+                if (http.status() >= 300) {
+                    readJson(http.status(), response);
+                }
+
+                String error = null;
+                try (MappingIterator<JsonNode> messages = objectMapper.readerFor(JsonNode.class).readValues(response)) {
+                    while (messages.hasNextValue()) {
+                        DockerProgressEvent event = DockerProgressEvent.from(messages.nextValue());
+                        events.accept(event);
+                        if (event.isError()) {
+                            error = event.error();
+                        }
+                    }
+                }
+                if (error != null) {
+                    throw new DockerEngineException(200, error.trim());
+                }
+            } catch (IOException e) {
+                if (timedOut.get()) {
+                    throw new IOException(method + " " + path + " timed out after " + timeout.toSeconds() + "s", e);
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(int status, InputStream body) throws IOException;
+    }
+
+    private <T> T request(String method, String path, Map<String, String> query, ResponseReader<T> reader) throws IOException {
+        try (UnixSocketHttp http = UnixSocketHttp.connect(socketPath)) {
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> closeQuietly(http),
+                    REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            try {
+                http.send(method, "/v" + apiVersion + path + queryString(query), Map.of(), null);
+                InputStream body = http.receive();
+                return reader.read(http.status(), body);
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+    }
+
+    // The daemon may reject a request (and close) before reading the whole body; its answer is still readable.
+    // A failing body writer is not tolerated: the request is aborted and the error propagates.
+    private void sendIgnoringEarlyClose(UnixSocketHttp http, String method, String path, Map<String, String> query,
+                                        Map<String, String> headers, BodyWriter body) throws IOException {
+        try {
+            http.send(method, "/v" + apiVersion + path + queryString(query), headers, body);
+        } catch (UnixSocketHttp.ConnectionClosedException e) {
+            log.debug("{} {} body not fully sent: {}", method, path, e.getMessage());
+        }
+    }
+
+    /**
+     * @throws DockerEngineException if the response is an error
+     */
+    private JsonNode readJson(int status, InputStream body) throws IOException {
+        byte[] content = body.readAllBytes();
+        JsonNode node = content.length > 0 ? objectMapper.readTree(content) : objectMapper.createObjectNode();
+        if (status >= 300) {
+            throw new DockerEngineException(status, node.path("message").asText("HTTP " + status));
+        }
+        return node;
+    }
+
+    private static String queryString(Map<String, String> query) {
+        if (query.isEmpty()) {
+            return "";
+        }
+        return query.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&", "?", ""));
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+}
@@ -0,0 +1,22 @@
+package sbhackathon.koala.happyMSP.infra.docker;
+
+import java.io.IOException;
+
+/**
+ * The Docker daemon answered with an error status or reported an error in a progress stream
+ * (failed build step, rejected push).
+ */
+public class DockerEngineException extends IOException {
+
+    // HTTP status, or 200 for an error reported in the progress stream
+    private final int status;
+
+    public DockerEngineException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
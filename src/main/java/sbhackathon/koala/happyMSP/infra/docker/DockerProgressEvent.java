@@ -0,0 +1,58 @@
+package sbhackathon.koala.happyMSP.infra.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One message of the JSON progress stream of a build, pull or push.
+ *
+ * @param stream     build output, usually ending in a newline
+ * @param status     e.g. "Pushing", "Layer already exists"
+ * @param id         layer id the status refers to
+ * @param current    bytes transferred of the layer so far
+ * @param total      size of the layer
+ * @param step       build step number parsed from "Step 3/7 : ..."
+ * @param totalSteps number of build steps
+ * @param error      set when the operation failed
+ * @param aux        result data, e.g. {"ID": "sha256:..."} of a build or {"Digest": ...} of a push
+ */
+public record DockerProgressEvent(String stream, String status, String id, Long current, Long total,
+                                  Integer step, Integer totalSteps, String error, JsonNode aux) {
+
+    private static final Pattern STEP_PATTERN = Pattern.compile("^Step (\\d+)/(\\d+) :");
+
+    static DockerProgressEvent from(JsonNode node) {
+        String stream = text(node, "stream");
+        Integer step = null;
+        Integer totalSteps = null;
+        if (stream != null) {
+            Matcher matcher = STEP_PATTERN.matcher(stream);
+            if (matcher.find()) {
+                step = Integer.parseInt(matcher.group(1));
+                totalSteps = Integer.parseInt(matcher.group(2));
+            }
+        }
+
+        JsonNode progress = node.path("progressDetail");
+        return new DockerProgressEvent(
+                stream,
+                text(node, "status"),
+                text(node, "id"),
+                progress.hasNonNull("current") ? progress.get("current").asLong() : null,
+                progress.hasNonNull("total") ? progress.get("total").asLong() : null,
+                step,
+                totalSteps,
+                node.hasNonNull("error") ? node.get("error").asText() : text(node.path("errorDetail"), "message"),
+                node.hasNonNull("aux") ? node.get("aux") : null);
+    }
+
+    public boolean isError() {
+        return error != null;
+    }
+
+    private static String text(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+}
@@ -0,0 +1,289 @@
+package sbhackathon.koala.happyMSP.infra.docker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One HTTP/1.1 exchange over a Unix domain socket, which is all the Docker Engine API needs
+ * (java.net.http cannot connect to a Unix socket). The request is written completely before the
+ * response is read, on the calling thread; closing the exchange from another thread aborts it.
+ */
+final class UnixSocketHttp implements Closeable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final int BODY_BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final OutputStream out;
+    private final InputStream in;
+
+    private int status;
+    private final Map<String, String> responseHeaders = new HashMap<>();
+
+    private UnixSocketHttp(SocketChannel channel) {
+        this.channel = channel;
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel));
+        this.in = new BufferedInputStream(Channels.newInputStream(channel));
+    }
+
+    static UnixSocketHttp connect(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new UnixSocketHttp(channel);
+    }
+
+    /**
+     * @param body written with chunked transfer encoding, or null for a request without body
+     * @throws ConnectionClosedException if the daemon closed the connection before reading the
+     *         whole body; its response can still be received
+     * @throws IOException if the body writer failed; the connection is then closed without the
+     *         terminating chunk, so the daemon never takes the truncated body as complete
+     */
+    void send(String method, String target, Map<String, String> headers, DockerEngineClient.BodyWriter body) throws IOException {
+        StringBuilder head = new StringBuilder()
+                .append(method).append(' ').append(target).append(" HTTP/1.1\r\n")
+                .append("Host: docker\r\n")
+                .append("Connection: close\r\n");
+        headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+        head.append(body != null ? "Transfer-Encoding: chunked\r\n" : "Content-Length: 0\r\n").append("\r\n");
+
+        out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        if (body != null) {
+            ChunkedOutputStream chunkedOut = new ChunkedOutputStream(out);
+            OutputStream chunked = new BufferedOutputStream(chunkedOut, BODY_BUFFER_SIZE);
+            try {
+                body.writeTo(chunked);
+                chunked.close();
+            } catch (IOException | RuntimeException e) {
+                if (chunkedOut.isBroken()) {
+                    throw new ConnectionClosedException(e);
+                }
+                channel.close();
+                throw e instanceof IOException io ? io : new IOException("Request body writer failed: " + e.getMessage(), e);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the status line and headers.
+     *
+     * @return the response body
+     */
+    InputStream receive() throws IOException {
+        String statusLine = readLine(in);
+        if (statusLine == null) {
+            throw new EOFException("Docker daemon closed the connection without a response");
+        }
+        String[] parts = statusLine.split(" ", 3);
+        status = Integer.parseInt(parts[1]);
+
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                responseHeaders.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        if ("chunked".equalsIgnoreCase(responseHeaders.get("transfer-encoding"))) {
+            return new ChunkedInputStream(in);
+        }
+        String contentLength = responseHeaders.get("content-length");
+        return contentLength != null ? new BoundedInputStream(in, Long.parseLong(contentLength)) : in;
+    }
+
+    int status() {
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writing the request body failed because the daemon closed the connection, e.g. after
+     * rejecting the request.
+     */
+    static final class ConnectionClosedException extends IOException {
+        ConnectionClosedException(Throwable cause) {
+            super("Docker daemon closed the connection while the request body was sent: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static final class ChunkedOutputStream extends FilterOutputStream {
+
+        // A write to the socket failed, as opposed to the body writer
+        private boolean broken;
+
+        ChunkedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        boolean isBroken() {
+            return broken;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            try {
+                out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+                out.write(CRLF);
+                out.write(b, off, len);
+                out.write(CRLF);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        // Ends the body; the connection stays open for the response
+        @Override
+        public void close() throws IOException {
+            try {
+                out.write('0');
+                out.write(CRLF);
+                out.write(CRLF);
+                out.flush();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+    }
+
+    private static final class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining = 0;
+        private boolean first = true;
+        private boolean eof = false;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (remaining == 0) {
+                if (!first) {
+                    readLine(in); // CRLF after the previous chunk
+                }
+                first = false;
+                String sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    eof = true;
+                    return -1;
+                }
+                remaining = Long.parseLong(sizeLine.split(";", 2)[0].trim(), 16);
+                if (remaining == 0) {
+                    eof = true;
+                    return -1;
+                }
+            }
+
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Docker daemon closed the connection mid-chunk");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read != -1) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
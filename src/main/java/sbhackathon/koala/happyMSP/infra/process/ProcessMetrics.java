@@ -0,0 +1,54 @@
+package sbhackathon.koala.happyMSP.infra.process;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Exit code and duration statistics per command type (e.g. "docker build", "kubectl apply").
+ */
+public class ProcessMetrics {
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private static class Stats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final LongAccumulator maxMillis = new LongAccumulator(Long::max, 0);
+        private volatile int lastExitCode;
+    }
+
+    public void record(String commandType, ProcessResult result) {
+        Stats s = stats.computeIfAbsent(commandType, key -> new Stats());
+        long millis = result.getDuration().toMillis();
+        s.count.incrementAndGet();
+        s.totalMillis.addAndGet(millis);
+        s.maxMillis.accumulate(millis);
+        s.lastExitCode = result.getExitCode();
+        if (result.isTimedOut()) {
+            s.timeouts.incrementAndGet();
+        }
+        if (!result.isSuccess()) {
+            s.failures.incrementAndGet();
+        }
+    }
+
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        stats.forEach((type, s) -> {
+            long count = s.count.get();
+            snapshot.put(type, Map.of(
+                    "count", count,
+                    "failures", s.failures.get(),
+                    "timeouts", s.timeouts.get(),
+                    "avgMillis", count > 0 ? s.totalMillis.get() / count : 0,
+                    "maxMillis", s.maxMillis.get(),
+                    "lastExitCode", (long) s.lastExitCode));
+        });
+        return snapshot;
+    }
+}
@@ -0,0 +1,21 @@
+package sbhackathon.koala.happyMSP.infra.process;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+@Builder
+public class ProcessResult {
+    private final int exitCode;
+    // Captured tail of stdout (stdout and stderr when merged)
+    private final String stdout;
+    private final String stderr;
+    private final Duration duration;
+    private final boolean timedOut;
+
+    public boolean isSuccess() {
+        return !timedOut && exitCode == 0;
+    }
+}
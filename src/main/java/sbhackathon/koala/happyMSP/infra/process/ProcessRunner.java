@@ -0,0 +1,315 @@
+package sbhackathon.koala.happyMSP.infra.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs every external command of the application (docker, kubectl). Both output streams are
+ * drained concurrently so a chatty stderr can never fill its pipe and block the child, commands
+ * are killed with their whole process tree on timeout, concurrent forks are limited per tool,
+ * and exit code/duration are recorded per command type.
+ */
+@Slf4j
+@Component
+public class ProcessRunner {
+
+    // Output still buffered in the pipes is read for at most this long after the process exited
+    private static final long DRAIN_GRACE_SECONDS = 5;
+
+    private final Map<String, Semaphore> toolLimits;
+    private final ProcessMetrics metrics = new ProcessMetrics();
+    private final ExecutorService drainExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "process-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ProcessRunner(@Value("${process.max-concurrent.docker:8}") int dockerLimit,
+                         @Value("${process.max-concurrent.kubectl:8}") int kubectlLimit) {
+        this.toolLimits = Map.of(
+                "docker", new Semaphore(dockerLimit, true),
+                "kubectl", new Semaphore(kubectlLimit, true));
+    }
+
+    public ProcessResult run(ProcessSpec spec) throws IOException, InterruptedException {
+        Semaphore limit = spec.isExemptFromLimit() ? null : toolLimits.get(spec.getTool());
+        if (limit != null) {
+            limit.acquire();
+        }
+        try {
+            return execute(spec);
+        } finally {
+            if (limit != null) {
+                limit.release();
+            }
+        }
+    }
+
+    public ProcessMetrics getMetrics() {
+        return metrics;
+    }
+
+    private ProcessResult execute(ProcessSpec spec) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(spec.getCommand());
+        if (spec.getDirectory() != null) {
+            processBuilder.directory(spec.getDirectory().toFile());
+        }
+        processBuilder.redirectErrorStream(spec.isMergeStderr());
+        if (spec.getStdin() == null && spec.getStdinWriter() == null) {
+            processBuilder.redirectInput(ProcessBuilder.Redirect.from(new java.io.File("/dev/null")));
+        }
+
+        long start = System.nanoTime();
+        Process process = processBuilder.start();
+        if (spec.getOnStart() != null) {
+            spec.getOnStart().accept(process);
+        }
+
+        TailBuffer stdout = new TailBuffer(spec.getMaxCapturedChars());
+        TailBuffer stderr = new TailBuffer(spec.getMaxCapturedChars());
+        Future<?> stdoutDrain = drainExecutor.submit(() -> drain(process, process.getInputStream(), stdout, spec.getStdoutHandler()));
+        Future<?> stderrDrain = spec.isMergeStderr()
+                ? null
+                : drainExecutor.submit(() -> drain(process, process.getErrorStream(), stderr, spec.getStderrHandler()));
+
+        // Written next to the drains, so the timeout below also covers a process that stops reading
+        Future<?> stdinWrite = spec.getStdin() != null || spec.getStdinWriter() != null
+                ? drainExecutor.submit(() -> {
+                    writeStdin(process, spec);
+                    return null;
+                })
+                : null;
+
+        boolean timedOut = false;
+        try {
+            if (spec.getTimeout() != null) {
+                if (!process.waitFor(spec.getTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                    timedOut = true;
+                    log.warn("{} timed out after {}s, killing process tree", spec.resolveCommandType(),
+                            spec.getTimeout().toSeconds());
+                    killTree(process);
+                }
+            }
+            process.waitFor();
+        } catch (InterruptedException e) {
+            killTree(process);
+            if (stdinWrite != null) {
+                stdinWrite.cancel(true);
+            }
+            throw e;
+        }
+
+        awaitDrain(stdoutDrain);
+        awaitDrain(stderrDrain);
+        awaitStdin(stdinWrite);
+
+        ProcessResult result = ProcessResult.builder()
+                .exitCode(process.exitValue())
+                .stdout(stdout.toString())
+                .stderr(stderr.toString())
+                .duration(Duration.ofNanos(System.nanoTime() - start))
+                .timedOut(timedOut)
+                .build();
+        metrics.record(spec.resolveCommandType(), result);
+        log.debug("{} exited with {} in {}ms", spec.resolveCommandType(), result.getExitCode(),
+                result.getDuration().toMillis());
+        return result;
+    }
+
+    /**
+     * A failure of the writer itself (e.g. an object missing while streaming a build context)
+     * kills the process before its input is closed, so it never sees a truncated input as
+     * complete, and is rethrown. A failed write to the pipe is only tolerated once the process
+     * has exited: it then stopped reading on its own and the exit code tells why.
+     */
+    private void writeStdin(Process process, ProcessSpec spec) throws IOException, InterruptedException {
+        StdinPipe in = new StdinPipe(process.getOutputStream());
+        try {
+            if (spec.getStdinWriter() != null) {
+                spec.getStdinWriter().writeTo(in);
+            } else {
+                in.write(spec.getStdin().getBytes(StandardCharsets.UTF_8));
+            }
+            in.close();
+        } catch (IOException | RuntimeException e) {
+            if (in.isBroken() && process.waitFor(DRAIN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                log.debug("stdin of {} closed early: {}", spec.resolveCommandType(), e.getMessage());
+                return;
+            }
+            killTree(process);
+            in.closeQuietly();
+            if (in.isBroken()) {
+                throw new IOException(spec.resolveCommandType() + " stopped reading its input while still running", e);
+            }
+            throw e instanceof IOException io ? io : new IOException("Writing the input of "
+                    + spec.resolveCommandType() + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void drain(Process process, InputStream stream, TailBuffer buffer, Consumer<String> handler) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                buffer.append(line);
+                if (handler != null) {
+                    handler.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            // Stream closed because the process was killed
+        } catch (RuntimeException e) {
+            log.debug("Output handler failed, stopping process: {}", e.getMessage());
+            killTree(process);
+        }
+    }
+
+    private void awaitStdin(Future<?> stdinWrite) throws IOException, InterruptedException {
+        if (stdinWrite == null) {
+            return;
+        }
+        try {
+            // The process has exited, so a write still in progress fails right away
+            stdinWrite.get(DRAIN_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            stdinWrite.cancel(true);
+        }
+    }
+
+    private void awaitDrain(Future<?> drain) {
+        if (drain == null) {
+            return;
+        }
+        try {
+            // A grandchild that inherited the pipe can keep it open after the process exited
+            drain.get(DRAIN_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            drain.cancel(true);
+        } catch (Exception e) {
+            log.debug("Output drain failed: {}", e.getMessage());
+        }
+    }
+
+    public static void killTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * The process's stdin, remembering whether a write to the pipe itself failed so those
+     * failures can be told apart from failures of whatever produces the input.
+     */
+    private static class StdinPipe extends FilterOutputStream {
+        private volatile boolean broken;
+
+        StdinPipe(OutputStream out) {
+            super(out);
+        }
+
+        boolean isBroken() {
+            return broken;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The process is already gone
+            }
+        }
+    }
+
+    /**
+     * Keeps the last maxChars characters of a stream, whole lines only.
+     */
+    private static class TailBuffer {
+        private final int maxChars;
+        private final Deque<String> lines = new ArrayDeque<>();
+        private int size = 0;
+
+        TailBuffer(int maxChars) {
+            this.maxChars = maxChars;
+        }
+
+        synchronized void append(String line) {
+            lines.addLast(line);
+            size += line.length() + 1;
+            while (size > maxChars && lines.size() > 1) {
+                size -= lines.removeFirst().length() + 1;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder sb = new StringBuilder(size);
+            for (String line : lines) {
+                sb.append(line).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
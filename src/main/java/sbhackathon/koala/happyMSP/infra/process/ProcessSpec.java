@@ -0,0 +1,69 @@
+package sbhackathon.koala.happyMSP.infra.process;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Description of one external command run through {@link ProcessRunner}.
+ */
+@Getter
+@Builder
+public class ProcessSpec {
+
+    private final List<String> command;
+
+    // Working directory; the JVM's working directory when null
+    private final Path directory;
+
+    // Written to stdin (then closed) once both output streams are being drained
+    private final String stdin;
+
+    // Streams binary stdin instead, e.g. a build context tar; stdin is closed when it returns
+    private final StdinWriter stdinWriter;
+
+    // The process tree is killed when the command runs longer; null means no limit
+    private final Duration timeout;
+
+    // Merge stderr into stdout, like ProcessBuilder.redirectErrorStream(true)
+    private final boolean mergeStderr;
+
+    // Called for every output line; an exception thrown here kills the process
+    private final Consumer<String> stdoutHandler;
+    private final Consumer<String> stderrHandler;
+
+    // Called right after the process started, e.g. to register it for cancellation
+    private final Consumer<Process> onStart;
+
+    // Tail of each stream kept in the result
+    @Builder.Default
+    private final int maxCapturedChars = 64 * 1024;
+
+    // Long-lived commands (log follow) do not take a permit from the per-tool limit
+    private final boolean exemptFromLimit;
+
+    // Metric label; defaults to the tool and its first argument, e.g. "kubectl apply"
+    private final String commandType;
+
+    @FunctionalInterface
+    public interface StdinWriter {
+        void writeTo(OutputStream stdin) throws IOException;
+    }
+
+    public String getTool() {
+        return command.get(0);
+    }
+
+    public String resolveCommandType() {
+        if (commandType != null) {
+            return commandType;
+        }
+        return command.size() > 1 ? command.get(0) + " " + command.get(1) : command.get(0);
+    }
+}
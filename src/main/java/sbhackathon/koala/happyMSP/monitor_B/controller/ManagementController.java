@@ -5,6 +5,8 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.monitor_B.event.SseEventStream;
 import sbhackathon.koala.happyMSP.monitor_B.service.LogService;
 import sbhackathon.koala.happyMSP.monitor_B.service.ManagementService;
 
@@ -17,6 +19,8 @@ public class ManagementController {
 
     private final ManagementService managementService;
     private final LogService logService; // LogService 직접 주입
+    private final ProcessRunner processRunner;
+    private final SseEventStream eventStream;
 
     // 파드 강제 재시작
     @PostMapping("/pod/restart")
@@ -57,4 +61,16 @@ public class ManagementController {
         logService.streamPodLogs(podName, emitter);
         return emitter;
     }
-}
\ No newline at end of file
+
+    // docker/kubectl 명령 종류별 실행 횟수, 실패/타임아웃 횟수, 소요 시간
+    @GetMapping("/process-metrics")
+    public ResponseEntity<Map<String, Map<String, Long>>> getProcessMetrics() {
+        return ResponseEntity.ok(processRunner.getMetrics().snapshot());
+    }
+
+    // SSE 스트림별 구독자 수, 대기 중인 이벤트 수, 드롭/병합된 이벤트 수
+    @GetMapping("/sse-metrics")
+    public ResponseEntity<Map<String, Map<String, Long>>> getSseMetrics() {
+        return ResponseEntity.ok(eventStream.getMetrics());
+    }
+}
@@ -1,18 +1,16 @@
 package sbhackathon.koala.happyMSP.monitor_B.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import sbhackathon.koala.happyMSP.build_A.repository.RepoRepository;
-import sbhackathon.koala.happyMSP.monitor_B.event.SseEvent;
 import sbhackathon.koala.happyMSP.monitor_B.event.SseEventStream;
 import sbhackathon.koala.happyMSP.monitor_B.service.DashboardService; // 추가
 import sbhackathon.koala.happyMSP.monitor_B.service.MonitorService;
 
-import java.io.IOException;
+import java.util.Map;
 
 @RequiredArgsConstructor
 @RestController
@@ -25,28 +23,15 @@ public class MonitoringController {
     private final SseEventStream eventStream;
     private final MonitorService monitorService;
     private final DashboardService dashboardService; // 주입 추가
-    private final ObjectMapper objectMapper;
 
     // 기존 배포 로그용
     @GetMapping(value = "/deployments", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamDeploymentMetrics(@RequestParam("repo_url") String repoUrl) {
         SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
 
-        eventStream.subscribe(repoUrl, (SseEvent event) -> {
-            try {
-                String json = objectMapper.writeValueAsString(event.data());
-                emitter.send(SseEmitter.event().name(event.event()).data(json));
-            } catch (IOException e) {
-                emitter.completeWithError(e);
-            }
-        });
-
-        Runnable cleanup = () -> eventStream.unsubscribe(repoUrl);
-        emitter.onCompletion(cleanup);
-        emitter.onTimeout(cleanup);
-        emitter.onError((e) -> cleanup.run());
-
-        eventStream.publish(new SseEvent(repoUrl, "connected", "Deployment monitoring connection successful"));
+        // 같은 repo를 여러 탭에서 열어도 각 연결이 모든 이벤트를 받음
+        SseEventStream.Subscription subscription = eventStream.subscribe(repoUrl, emitter);
+        subscription.send("connected", "Deployment monitoring connection successful");
         monitorService.startDeploymentPipeline(repoUrl);
 
         return emitter;
@@ -58,26 +43,25 @@ public class MonitoringController {
         SseEmitter emitter = new SseEmitter(DASHBOARD_TIMEOUT);
 
         String metricKey = repoUrl + "-metric";
+        SseEventStream.Subscription subscription = eventStream.subscribe(metricKey, emitter);
+        // 재동기화 요청 시 이 연결을 지정할 수 있도록 구독 ID 전달
+        subscription.send("connected", Map.of("subscriptionId", subscription.getId()));
 
-        eventStream.subscribe(metricKey, (SseEvent event) -> {
-            try {
-                String json = objectMapper.writeValueAsString(event.data());
-                emitter.send(SseEmitter.event().name(event.event()).data(json));
-            } catch (IOException e) {
-                emitter.completeWithError(e);
-            }
-        });
-
-        Runnable cleanup = () -> eventStream.unsubscribe(metricKey);
-        emitter.onCompletion(cleanup);
-        emitter.onTimeout(cleanup);
-        emitter.onError((e) -> cleanup.run());
-
-        dashboardService.startDashboardStreaming(repoUrl);
+        dashboardService.startDashboardStreaming(repoUrl, subscription);
 
         return emitter;
     }
 
+    // 대시보드 delta의 seq가 건너뛰었을 때 클라이언트가 전체 스냅샷을 다시 요청 (요청한 연결에만 전송)
+    @PostMapping("/dashboard/resync")
+    public ResponseEntity<Void> resyncDashboard(@RequestParam("repo_url") String repoUrl,
+                                                @RequestParam("subscription_id") String subscriptionId) {
+        if (!dashboardService.resync(repoUrl, subscriptionId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.accepted().build();
+    }
+
 
     private final RepoRepository repository;
     @GetMapping("/temp")
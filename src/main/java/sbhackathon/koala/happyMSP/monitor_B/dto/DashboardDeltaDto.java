@@ -0,0 +1,22 @@
+package sbhackathon.koala.happyMSP.monitor_B.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pod changes since the previous delta (or snapshot) of a project's dashboard. A client applies
+ * it if seq is one above the last seq it saw, ignores it if not above, and requests a resync on
+ * a gap.
+ */
+@Getter
+@Builder
+public class DashboardDeltaDto {
+    private long seq;
+    private List<ServiceMetricDto> added;
+    // podName plus only the fields that changed
+    private List<Map<String, Object>> updated;
+    private List<String> removed;
+}
@@ -0,0 +1,16 @@
+package sbhackathon.koala.happyMSP.monitor_B.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Full state of a project's dashboard; deltas with a higher seq apply on top of it.
+ */
+@Getter
+@Builder
+public class DashboardSnapshotDto {
+    private long seq;
+    private List<ServiceMetricDto> pods;
+}
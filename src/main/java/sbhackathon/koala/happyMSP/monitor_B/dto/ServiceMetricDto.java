@@ -11,6 +11,9 @@ public class ServiceMetricDto {
     private String status;
     private String cpuUsage;
     private String memoryUsage;
-    private String age;
+    private long cpuMillicores;
+    private long memoryBytes;
+    // Epoch millis the pod started at, null until it is scheduled and started
+    private Long startedAt;
     private int restarts;
 }
\ No newline at end of file
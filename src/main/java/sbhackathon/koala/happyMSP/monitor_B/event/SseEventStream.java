@@ -1,28 +1,254 @@
 package sbhackathon.koala.happyMSP.monitor_B.event;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Consumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Fans events out to every SSE connection subscribed to a key, e.g. all browser tabs open on the
+ * same repository. Publishing never blocks: each event is serialized once and queued per
+ * subscriber, and each subscriber's queue is drained in order on a dispatch thread, so a slow
+ * client only delays itself. When a queue is full the oldest event is dropped; events listed in
+ * monitor.sse.coalesce-events carry a full snapshot (dashboard-snapshot) and replace a queued event
+ * of the same name instead.
+ */
+@Slf4j
 @Component
 public class SseEventStream {
 
-    private final Map<String, Consumer<SseEvent>> listeners = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final int queueCapacity;
+    private final Set<String> coalescedEvents;
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final SseMetrics metrics = new SseMetrics();
+    private final ExecutorService dispatcher = Executors.newCachedThreadPool(new DispatchThreadFactory());
 
-    public void subscribe(String repoUrl, Consumer<SseEvent> listener) {
-        listeners.put(repoUrl, listener);
+    private record Message(String event, String json) {}
+
+    public SseEventStream(ObjectMapper objectMapper,
+                          @Value("${monitor.sse.queue-capacity:256}") int queueCapacity,
+                          @Value("${monitor.sse.coalesce-events:dashboard-snapshot,ingress-info}") List<String> coalescedEvents) {
+        this.objectMapper = objectMapper;
+        this.queueCapacity = queueCapacity;
+        this.coalescedEvents = Set.copyOf(coalescedEvents);
     }
 
-    public void unsubscribe(String repoUrl) {
-        listeners.remove(repoUrl);
+    /**
+     * Subscribes the emitter until it completes, times out or a send fails.
+     */
+    public Subscription subscribe(String key, SseEmitter emitter) {
+        Subscription subscription = new Subscription(key, emitter);
+        subscriptions.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        return subscription;
+    }
+
+    /**
+     * @return the subscription of the key with the given id, if it is still open
+     */
+    public Optional<Subscription> find(String key, String id) {
+        Set<Subscription> subscribers = subscriptions.get(key);
+        if (subscribers == null) {
+            return Optional.empty();
+        }
+        return subscribers.stream().filter(subscription -> subscription.id.equals(id)).findFirst();
+    }
+
+    public boolean hasSubscribers(String key) {
+        Set<Subscription> subscribers = subscriptions.get(key);
+        return subscribers != null && !subscribers.isEmpty();
     }
 
     public void publish(SseEvent event) {
-        Consumer<SseEvent> listener = listeners.get(event.repoUrl());
-        if (listener != null) {
-            listener.accept(event);
+        Set<Subscription> subscribers = subscriptions.get(event.repoUrl());
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        Message message = serialize(event.event(), event.data());
+        if (message == null) {
+            return;
+        }
+        metrics.published(event.repoUrl());
+        subscribers.forEach(subscription -> subscription.offer(message));
+    }
+
+    /**
+     * @return per key: subscribers, queued events, dropped and coalesced events
+     */
+    public Map<String, Map<String, Long>> getMetrics() {
+        Map<String, Integer> subscriberCounts = new HashMap<>();
+        Map<String, Integer> queueDepths = new HashMap<>();
+        subscriptions.forEach((key, subscribers) -> {
+            subscriberCounts.put(key, subscribers.size());
+            queueDepths.put(key, subscribers.stream().mapToInt(Subscription::queueDepth).sum());
+        });
+        return metrics.snapshot(subscriberCounts, queueDepths);
+    }
+
+    private Message serialize(String event, Object data) {
+        try {
+            return new Message(event, objectMapper.writeValueAsString(data));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize SSE event {}: {}", event, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * One SSE connection with its own bounded queue.
+     */
+    public final class Subscription {
+        private final String id = UUID.randomUUID().toString();
+        private final String key;
+        private final SseEmitter emitter;
+        private final LinkedList<Message> queue = new LinkedList<>();
+        // True while a dispatch task drains the queue; guarded by queue
+        private boolean draining = false;
+        private volatile boolean cancelled = false;
+
+        private Subscription(String key, SseEmitter emitter) {
+            this.key = key;
+            this.emitter = emitter;
+        }
+
+        // Lets a client address its own connection, e.g. to ask for a resync
+        public String getId() {
+            return id;
         }
+
+        /**
+         * Sends an event to this subscriber only, e.g. the connection greeting.
+         */
+        public void send(String event, Object data) {
+            Message message = serialize(event, data);
+            if (message != null) {
+                offer(message);
+            }
+        }
+
+        public void cancel() {
+            cancelled = true;
+            subscriptions.computeIfPresent(key, (k, subscribers) -> {
+                subscribers.remove(this);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+
+        private void offer(Message message) {
+            if (cancelled) {
+                return;
+            }
+            boolean startDrain;
+            synchronized (queue) {
+                if (!coalesced(message)) {
+                    if (queue.size() >= queueCapacity) {
+                        queue.poll();
+                        metrics.dropped(key);
+                    }
+                    queue.add(message);
+                }
+                metrics.queueDepth(key, queue.size());
+                startDrain = !draining;
+                draining = true;
+            }
+            if (startDrain) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    cancel();
+                }
+            }
+        }
+
+        // Replaces a queued event of the same name, keeping its position
+        private boolean coalesced(Message message) {
+            if (!coalescedEvents.contains(message.event())) {
+                return false;
+            }
+            ListIterator<Message> queued = queue.listIterator();
+            while (queued.hasNext()) {
+                if (queued.next().event().equals(message.event())) {
+                    queued.set(message);
+                    metrics.coalesced(key);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void drain() {
+            while (true) {
+                Message message;
+                synchronized (queue) {
+                    message = queue.poll();
+                    if (message == null || cancelled) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(SseEmitter.event().name(message.event()).data(message.json()));
+                    metrics.delivered(key);
+                } catch (IOException | IllegalStateException e) {
+                    // Client gone or emitter already completed
+                    log.debug("SSE send to {} failed: {}", key, e.getMessage());
+                    metrics.failedSubscriber(key);
+                    cancel();
+                    emitter.completeWithError(e);
+                    synchronized (queue) {
+                        draining = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private int queueDepth() {
+            synchronized (queue) {
+                return queue.size();
+            }
+        }
+    }
+
+    private static final class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "sse-dispatch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
     }
-}
\ No newline at end of file
+}
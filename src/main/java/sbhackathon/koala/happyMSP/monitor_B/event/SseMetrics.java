@@ -0,0 +1,70 @@
+package sbhackathon.koala.happyMSP.monitor_B.event;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Delivery statistics per stream key (repo URL, or repo URL + "-metric" for the dashboard).
+ */
+public class SseMetrics {
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private static class Stats {
+        private final AtomicLong published = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failedSubscribers = new AtomicLong();
+        private final LongAccumulator maxQueueDepth = new LongAccumulator(Long::max, 0);
+    }
+
+    void published(String key) {
+        stats(key).published.incrementAndGet();
+    }
+
+    void delivered(String key) {
+        stats(key).delivered.incrementAndGet();
+    }
+
+    void coalesced(String key) {
+        stats(key).coalesced.incrementAndGet();
+    }
+
+    void dropped(String key) {
+        stats(key).dropped.incrementAndGet();
+    }
+
+    void failedSubscriber(String key) {
+        stats(key).failedSubscribers.incrementAndGet();
+    }
+
+    void queueDepth(String key, int depth) {
+        stats(key).maxQueueDepth.accumulate(depth);
+    }
+
+    private Stats stats(String key) {
+        return stats.computeIfAbsent(key, k -> new Stats());
+    }
+
+    /**
+     * @param subscribers current subscriber count per key
+     * @param queueDepths events currently queued per key, summed over its subscribers
+     */
+    Map<String, Map<String, Long>> snapshot(Map<String, Integer> subscribers, Map<String, Integer> queueDepths) {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        stats.forEach((key, s) -> snapshot.put(key, Map.of(
+                "subscribers", (long) subscribers.getOrDefault(key, 0),
+                "queueDepth", (long) queueDepths.getOrDefault(key, 0),
+                "maxQueueDepth", s.maxQueueDepth.get(),
+                "published", s.published.get(),
+                "delivered", s.delivered.get(),
+                "coalesced", s.coalesced.get(),
+                "dropped", s.dropped.get(),
+                "failedSubscribers", s.failedSubscribers.get())));
+        return snapshot;
+    }
+}
@@ -19,6 +19,11 @@ public class AwsEcrCheckService {
     private EcrClient ecrClient;
 
     public boolean checkImageExists(String fullUri, String tag) {
+        return checkImageExists(fullUri, tag, 20_000); // 20초 대기
+    }
+
+    // timeoutMs 가 0 이면 재시도 없이 한 번만 확인
+    public boolean checkImageExists(String fullUri, String tag, long timeoutMs) {
         if (ecrClient == null) {
             return true; // 로컬 테스트 등 ECR 클라이언트가 없으면 Pass
         }
@@ -35,9 +40,8 @@ public class AwsEcrCheckService {
                 .build();
 
         long start = System.currentTimeMillis();
-        long timeout = 20_000; // 20초 대기
 
-        while (System.currentTimeMillis() - start < timeout) {
+        while (true) {
             try {
                 ecrClient.describeImages(request);
                 return true; // 이미지 존재 확인됨
@@ -48,9 +52,20 @@ public class AwsEcrCheckService {
                 // 권한 문제나 잘못된 파라미터 등 API 호출 자체 에러는 재시도해도 안 될 가능성이 높음
                 return false;
             }
+            if (System.currentTimeMillis() - start >= timeoutMs) {
+                return false;
+            }
             sleep(2000);
         }
-        return false;
+    }
+
+    // 재시도 없이 한 번만 확인하며, ECR 클라이언트가 없어 확인할 수 없으면 없는 것으로 간주
+    // (중단된 빌드 재개 시 존재하지 않는 이미지를 PUSHED로 기록하지 않도록)
+    public boolean isImagePresent(String fullUri, String tag) {
+        if (ecrClient == null) {
+            return false;
+        }
+        return checkImageExists(fullUri, tag, 0);
     }
 
     private String extractRepositoryName(String fullUri) {
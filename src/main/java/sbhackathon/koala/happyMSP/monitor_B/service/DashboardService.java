@@ -1,70 +1,80 @@
 package sbhackathon.koala.happyMSP.monitor_B.service;
 
-import com.google.gson.reflect.TypeToken;
-import io.kubernetes.client.openapi.ApiClient;
-import io.kubernetes.client.openapi.Configuration;
-import io.kubernetes.client.openapi.Pair;
-import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.models.V1Pod;
-import io.kubernetes.client.util.Config;
-import io.kubernetes.client.util.Watch;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.Call;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import sbhackathon.koala.happyMSP.build_A.repository.RepoRepository;
+import sbhackathon.koala.happyMSP.deployment_CD.repository.ServiceRepository;
 import sbhackathon.koala.happyMSP.entity.Repository;
+import sbhackathon.koala.happyMSP.monitor_B.dto.DashboardDeltaDto;
 import sbhackathon.koala.happyMSP.monitor_B.dto.ServiceMetricDto;
 import sbhackathon.koala.happyMSP.monitor_B.event.SseEvent;
 import sbhackathon.koala.happyMSP.monitor_B.event.SseEventStream;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
+import javax.annotation.PreDestroy;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dashboard streams: every open dashboard of a project gets the project's pods from the shared
+ * {@link PodInformer} plus CPU/memory from the shared {@link PodMetricsPoller}, so dashboards
+ * share a single watch and metrics poll and never reset each other's state. A dashboard gets a
+ * dashboard-snapshot when it opens and then dashboard-delta events with only the pods that were
+ * added, changed (changed fields only) or removed, coalesced over monitor.dashboard.coalesce-millis
+ * and numbered by seq so a client can detect a gap and ask for a resync. Snapshots go only to the
+ * dashboard that opened or asked for the resync.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class DashboardService {
 
+    private static final String NAMESPACE = "default";
+
     private final RepoRepository repoRepository;
+    private final ServiceRepository serviceRepository;
     private final SseEventStream eventStream;
     // [추가] Ingress URL 조회를 위해 Poller 주입
     private final K8sResourcePoller k8sResourcePoller;
-
-    private final Map<String, ServiceMetricDto> podStateCache = new ConcurrentHashMap<>();
-    private final Map<String, String[]> metricsCache = new ConcurrentHashMap<>();
-    private final Map<String, Instant> podStartTimeCache = new ConcurrentHashMap<>();
-
-    private CoreV1Api api;
+    private final PodInformer podInformer;
+    private final PodMetricsPoller podMetricsPoller;
+
+    // project -> SSE keys (repoUrl + "-metric") of its open dashboards
+    private final Map<String, Set<String>> dashboardsByProject = new ConcurrentHashMap<>();
+    // project -> its service names; its pods are named <project>-<service>-<replicaset hash>-<pod hash>
+    private final Map<String, Set<String>> serviceNamesByProject = new ConcurrentHashMap<>();
+    private final Map<String, DashboardView> views = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dashboard-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Pod and metric changes within this window go out as one delta
+    @Value("${monitor.dashboard.coalesce-millis:250}")
+    private long coalesceMillis;
 
     @PostConstruct
     public void init() {
-        try {
-            ApiClient client = Config.defaultClient();
-            client.setReadTimeout(0);
-            Configuration.setDefaultApiClient(client);
-            api = new CoreV1Api();
-        } catch (IOException e) {
-            log.error("K8s Client Init Failed", e);
-        }
+        podInformer.addListener(this::onPodEvent);
+        podMetricsPoller.addListener(this::onMetrics);
     }
 
     @Async("monitorExecutor")
-    public void startDashboardStreaming(String repoUrl) {
+    public void startDashboardStreaming(String repoUrl, SseEventStream.Subscription subscription) {
         String metricKey = repoUrl + "-metric";
-        log.info("Start Hybrid Monitoring (Watch + Polling) for: {}", metricKey);
+        log.info("Start Monitoring (shared pod watch + metric poller) for: {}", metricKey);
 
         String searchUrl = normalizeUrl(repoUrl);
         Repository repo = repoRepository.findByUri(searchUrl)
@@ -77,148 +87,62 @@ public class DashboardService {
         String ingressUrl = k8sResourcePoller.getIngressUrl(projectName);
         if (ingressUrl != null) {
             log.info("Sending Ingress URL to dashboard: {}", ingressUrl);
-            eventStream.publish(new SseEvent(metricKey, "ingress-info", ingressUrl));
+            subscription.send("ingress-info", ingressUrl);
         } else {
             log.warn("Ingress URL not found for project: {}", projectName);
         }
 
-        podStateCache.clear();
-        metricsCache.clear();
-        podStartTimeCache.clear();
+        loadServiceNames(projectName, repo);
+        dashboardsByProject.computeIfAbsent(projectName, project -> ConcurrentHashMap.newKeySet()).add(metricKey);
+        podInformer.watch(NAMESPACE);
+        podMetricsPoller.watch(NAMESPACE, () -> !dashboardsByProject.isEmpty());
 
-        ExecutorService metricExecutor = Executors.newSingleThreadExecutor();
-        metricExecutor.submit(() -> runMetricPoller(projectName, metricKey));
+        // Current state for the new dashboard; later changes follow as deltas
+        sendSnapshot(projectName, subscription);
+    }
 
-        try {
-            runPodWatcher(projectName, metricKey);
-        } catch (Exception e) {
-            log.error("Pod Watcher crashed", e);
-        } finally {
-            metricExecutor.shutdownNow();
+    /**
+     * Sends the project's full state again to one dashboard that missed a delta (seq gap).
+     *
+     * @return false if the dashboard's connection is no longer open
+     */
+    public boolean resync(String repoUrl, String subscriptionId) {
+        Optional<SseEventStream.Subscription> subscription = eventStream.find(repoUrl + "-metric", subscriptionId);
+        if (subscription.isEmpty()) {
+            return false;
         }
+        String projectName = extractRepositoryName(repoUrl);
+        // Also picks up services deployed since the dashboard opened
+        repoRepository.findByUri(normalizeUrl(repoUrl)).ifPresent(repo -> loadServiceNames(projectName, repo));
+        sendSnapshot(projectName, subscription.get());
+        return true;
     }
 
-    // ... (이하 기존 코드 동일: runPodWatcher, runMetricPoller, updatePodCache, broadcastToFrontend, executeCommand 등) ...
-
-    private void runPodWatcher(String projectName, String metricKey) throws Exception {
-        ApiClient client = api.getApiClient();
-
-        while (true) {
-            try {
-                log.info("Starting Watch for project: {}", projectName);
-
-                String path = "/api/v1/namespaces/default/pods";
-                List<Pair> queryParams = new ArrayList<>();
-                queryParams.add(new Pair("watch", "true"));
-
-                Call call = client.buildCall(
-                        client.getBasePath(),
-                        path,
-                        "GET",
-                        queryParams,
-                        new ArrayList<>(),
-                        null,
-                        new HashMap<>(),
-                        new HashMap<>(),
-                        new HashMap<>(),
-                        new String[]{"BearerToken"},
-                        null
-                );
-
-                Watch<V1Pod> watch = Watch.createWatch(
-                        client,
-                        call,
-                        new TypeToken<Watch.Response<V1Pod>>(){}.getType()
-                );
-
-                for (Watch.Response<V1Pod> item : watch) {
-                    V1Pod pod = item.object;
-                    if (pod == null || pod.getMetadata() == null) continue;
-
-                    String podName = pod.getMetadata().getName();
-
-                    if (podName != null && podName.startsWith(projectName)) {
-                        String eventType = item.type;
-
-                        if ("DELETED".equals(eventType)) {
-                            podStateCache.remove(podName);
-                            metricsCache.remove(podName);
-                            podStartTimeCache.remove(podName);
-                        } else {
-                            updatePodCache(projectName, pod);
-                        }
-                        broadcastToFrontend(metricKey);
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("Watch connection lost, reconnecting in 2s...", e);
-                Thread.sleep(2000);
+    private void loadServiceNames(String projectName, Repository repo) {
+        serviceNamesByProject.put(projectName, serviceRepository.findByRepository(repo).stream()
+                .map(sbhackathon.koala.happyMSP.entity.Service::getName)
+                .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    private void onPodEvent(String namespace, String type, V1Pod pod) {
+        if (!NAMESPACE.equals(namespace)) {
+            return;
+        }
+        String podName = pod.getMetadata().getName();
+        for (String projectName : dashboardsByProject.keySet()) {
+            if (serviceOf(projectName, podName) != null) {
+                scheduleFlush(projectName);
             }
         }
     }
 
-    private void runMetricPoller(String projectName, String metricKey) {
-        while (true) {
-            try {
-                long startTime = System.currentTimeMillis();
-
-                String output = executeCommand("bash", "-c", "kubectl top pods --no-headers | grep " + projectName);
-
-                if (!output.isBlank()) {
-                    for (String line : output.split("\n")) {
-                        if (line.isBlank()) continue;
-                        String[] parts = line.trim().split("\\s+");
-                        if (parts.length >= 3) {
-                            String podName = parts[0];
-                            String cpu = parts[1];
-                            String memory = parts[2];
-                            metricsCache.put(podName, new String[]{cpu, memory});
-                        }
-                    }
-                }
-
-                for (String podName : podStateCache.keySet()) {
-                    ServiceMetricDto oldDto = podStateCache.get(podName);
-                    if (oldDto == null) continue;
-
-                    String[] metrics = metricsCache.getOrDefault(podName, new String[]{"0m", "0Mi"});
-
-                    String currentAge = oldDto.getAge();
-                    Instant startInstant = podStartTimeCache.get(podName);
-                    if (startInstant != null) {
-                        long seconds = Duration.between(startInstant, Instant.now()).getSeconds();
-                        currentAge = formatDuration(seconds);
-                    }
-
-                    ServiceMetricDto newDto = ServiceMetricDto.builder()
-                            .serviceName(oldDto.getServiceName())
-                            .podName(oldDto.getPodName())
-                            .status(oldDto.getStatus())
-                            .restarts(oldDto.getRestarts())
-                            .cpuUsage(metrics[0])
-                            .memoryUsage(metrics[1])
-                            .age(currentAge)
-                            .build();
-
-                    podStateCache.put(podName, newDto);
-                }
-
-                broadcastToFrontend(metricKey);
-
-                long elapsed = System.currentTimeMillis() - startTime;
-                long sleepTime = 2000 - elapsed;
-                if (sleepTime > 0) Thread.sleep(sleepTime);
-
-            } catch (InterruptedException e) {
-                break;
-            } catch (Exception e) {
-                log.error("Metric Poller Error", e);
-                try { Thread.sleep(2000); } catch (InterruptedException ignored) {}
-            }
+    private void onMetrics(String namespace) {
+        if (NAMESPACE.equals(namespace)) {
+            dashboardsByProject.keySet().forEach(this::scheduleFlush);
         }
     }
 
-    private void updatePodCache(String projectName, V1Pod pod) {
+    private ServiceMetricDto toMetricDto(String serviceName, V1Pod pod) {
         String podName = pod.getMetadata().getName();
         String status = pod.getStatus().getPhase();
 
@@ -234,70 +158,129 @@ public class DashboardService {
             }
         }
 
-        String age = "0s";
-        if (pod.getStatus().getStartTime() != null) {
-            Instant startInstant = pod.getStatus().getStartTime().toInstant();
-            podStartTimeCache.put(podName, startInstant);
-            long seconds = Duration.between(startInstant, Instant.now()).getSeconds();
-            age = formatDuration(seconds);
-        }
+        // The dashboard derives the age; sending it would change every pod on every flush
+        Long startedAt = pod.getStatus().getStartTime() != null
+                ? pod.getStatus().getStartTime().toInstant().toEpochMilli()
+                : null;
 
         int restarts = 0;
         if (pod.getStatus().getContainerStatuses() != null && !pod.getStatus().getContainerStatuses().isEmpty()) {
             restarts = pod.getStatus().getContainerStatuses().get(0).getRestartCount();
         }
 
-        String[] metrics = metricsCache.getOrDefault(podName, new String[]{"0m", "0Mi"});
+        PodMetricsPoller.Usage usage = podMetricsPoller.usageOf(NAMESPACE, podName);
+        long cpuMillicores = usage != null ? usage.cpuMillicores() : 0;
+        long memoryBytes = usage != null ? usage.memoryBytes() : 0;
 
-        ServiceMetricDto dto = ServiceMetricDto.builder()
-                .serviceName(extractServiceName(projectName, podName))
+        return ServiceMetricDto.builder()
+                .serviceName(serviceName)
                 .podName(podName)
                 .status(status)
-                .cpuUsage(metrics[0])
-                .memoryUsage(metrics[1])
-                .age(age)
+                // Same format as kubectl top, e.g. "12m" and "45Mi"
+                .cpuUsage(cpuMillicores + "m")
+                .memoryUsage(memoryBytes / (1024 * 1024) + "Mi")
+                .cpuMillicores(cpuMillicores)
+                .memoryBytes(memoryBytes)
+                .startedAt(startedAt)
                 .restarts(restarts)
                 .build();
-
-        podStateCache.put(podName, dto);
     }
 
-    private void broadcastToFrontend(String metricKey) {
-        List<ServiceMetricDto> data = new ArrayList<>(podStateCache.values());
-        eventStream.publish(new SseEvent(metricKey, "dashboard-update", data));
+    private void scheduleFlush(String projectName) {
+        DashboardView view = views.computeIfAbsent(projectName, project -> new DashboardView());
+        boolean schedule;
+        synchronized (view) {
+            schedule = view.scheduleFlush();
+        }
+        if (schedule) {
+            flusher.schedule(() -> flush(projectName), coalesceMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
-    private String executeCommand(String... command) {
+    // Sends what changed since the last delta to the project's open dashboards
+    private void flush(String projectName) {
+        DashboardView view = views.get(projectName);
+        if (view == null) {
+            return;
+        }
+        synchronized (view) {
+            view.flushStarted();
+        }
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            StringBuilder out = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String line;
-                while ((line = br.readLine()) != null) out.append(line).append("\n");
+            Set<String> metricKeys = openDashboards(projectName);
+            if (metricKeys.isEmpty()) {
+                return;
+            }
+            List<ServiceMetricDto> pods = currentPods(projectName);
+            synchronized (view) {
+                DashboardDeltaDto delta = view.delta(pods);
+                if (delta != null) {
+                    metricKeys.forEach(metricKey -> eventStream.publish(new SseEvent(metricKey, "dashboard-delta", delta)));
+                }
             }
-            p.waitFor();
-            return out.toString();
         } catch (Exception e) {
-            return "";
+            log.error("Dashboard flush failed for project: {}", projectName, e);
         }
     }
 
-    private String extractServiceName(String projectName, String podName) {
-        try {
-            String prefix = projectName + "-";
-            if (podName.startsWith(prefix)) {
-                String temp = podName.substring(prefix.length());
-                int lastDash = temp.lastIndexOf('-');
-                if (lastDash > 0) {
-                    String temp2 = temp.substring(0, lastDash);
-                    int secondLastDash = temp2.lastIndexOf('-');
-                    if (secondLastDash > 0) return temp2.substring(0, secondLastDash);
-                }
+    // Only this dashboard gets the snapshot: it is what the others were last sent, so their deltas
+    // stay valid, and a flush then brings every dashboard up to date
+    private void sendSnapshot(String projectName, SseEventStream.Subscription subscription) {
+        if (openDashboards(projectName).isEmpty()) {
+            return;
+        }
+        DashboardView view = views.computeIfAbsent(projectName, project -> new DashboardView());
+        synchronized (view) {
+            if (!view.isBaselined()) {
+                subscription.send("dashboard-snapshot", view.snapshot(currentPods(projectName)));
+                return;
+            }
+            subscription.send("dashboard-snapshot", view.resend());
+        }
+        scheduleFlush(projectName);
+    }
+
+    // Forgets dashboards that were closed
+    private Set<String> openDashboards(String projectName) {
+        Set<String> metricKeys = dashboardsByProject.get(projectName);
+        if (metricKeys == null) {
+            return Set.of();
+        }
+        metricKeys.removeIf(metricKey -> !eventStream.hasSubscribers(metricKey));
+        if (metricKeys.isEmpty() && dashboardsByProject.remove(projectName, metricKeys)) {
+            views.remove(projectName);
+            serviceNamesByProject.remove(projectName);
+        }
+        return metricKeys;
+    }
+
+    private List<ServiceMetricDto> currentPods(String projectName) {
+        return serviceNamesByProject.getOrDefault(projectName, Set.of()).stream()
+                .sorted()
+                .flatMap(service -> podInformer.podsWithPrefix(NAMESPACE, projectName + "-" + service + "-").stream()
+                        .filter(pod -> service.equals(serviceOf(projectName, pod.getMetadata().getName())))
+                        .map(pod -> toMetricDto(service, pod)))
+                .toList();
+    }
+
+    /**
+     * @return the service of the project whose Deployment runs the pod, or null if the pod is not
+     *         the project's, e.g. a pod of project shop-admin while looking at project shop
+     */
+    private String serviceOf(String projectName, String podName) {
+        for (String service : serviceNamesByProject.getOrDefault(projectName, Set.of())) {
+            String prefix = projectName + "-" + service + "-";
+            if (!podName.startsWith(prefix)) {
+                continue;
             }
-        } catch (Exception ignored) {}
-        return podName;
+            // Exactly <replicaset hash>-<pod hash> must follow
+            String suffix = podName.substring(prefix.length());
+            int dash = suffix.indexOf('-');
+            if (dash > 0 && dash == suffix.lastIndexOf('-') && dash < suffix.length() - 1) {
+                return service;
+            }
+        }
+        return null;
     }
 
     private String normalizeUrl(String repoUrl) {
@@ -318,11 +301,8 @@ public class DashboardService {
         return "unknown-repo";
     }
 
-    private String formatDuration(long seconds) {
-        if (seconds < 60) return seconds + "s";
-        long minutes = seconds / 60;
-        if (minutes < 60) return minutes + "m" + (seconds % 60) + "s";
-        long hours = minutes / 60;
-        return hours + "h" + (minutes % 60) + "m";
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
     }
-}
\ No newline at end of file
+}
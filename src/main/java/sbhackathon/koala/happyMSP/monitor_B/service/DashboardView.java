@@ -0,0 +1,131 @@
+package sbhackathon.koala.happyMSP.monitor_B.service;
+
+import sbhackathon.koala.happyMSP.monitor_B.dto.DashboardDeltaDto;
+import sbhackathon.koala.happyMSP.monitor_B.dto.DashboardSnapshotDto;
+import sbhackathon.koala.happyMSP.monitor_B.dto.ServiceMetricDto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * What the dashboards of one project were last sent, to turn the next state into a delta. Not
+ * thread-safe; callers lock the view while computing and publishing.
+ */
+final class DashboardView {
+
+    private Map<String, ServiceMetricDto> sent = Map.of();
+    private long seq = 0;
+    private boolean flushScheduled = false;
+    // False until the first snapshot set what the dashboards were sent
+    private boolean baselined = false;
+
+    /**
+     * @return true if no flush is pending, the caller then schedules one
+     */
+    boolean scheduleFlush() {
+        if (flushScheduled) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+
+    // Called before the flush reads the state, so changes during the flush schedule another one
+    void flushStarted() {
+        flushScheduled = false;
+    }
+
+    /**
+     * @return the changes since the last delta or snapshot, or null if nothing changed
+     */
+    DashboardDeltaDto delta(List<ServiceMetricDto> pods) {
+        Map<String, ServiceMetricDto> current = byPodName(pods);
+
+        List<ServiceMetricDto> added = new ArrayList<>();
+        List<Map<String, Object>> updated = new ArrayList<>();
+        current.forEach((podName, pod) -> {
+            ServiceMetricDto previous = sent.get(podName);
+            if (previous == null) {
+                added.add(pod);
+                return;
+            }
+            Map<String, Object> changes = changedFields(previous, pod);
+            if (!changes.isEmpty()) {
+                Map<String, Object> update = new LinkedHashMap<>();
+                update.put("podName", podName);
+                update.putAll(changes);
+                updated.add(update);
+            }
+        });
+        List<String> removed = sent.keySet().stream().filter(podName -> !current.containsKey(podName)).toList();
+
+        if (added.isEmpty() && updated.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+        sent = current;
+        return DashboardDeltaDto.builder()
+                .seq(++seq)
+                .added(added)
+                .updated(updated)
+                .removed(removed)
+                .build();
+    }
+
+    /**
+     * Full state at the current seq; following deltas are relative to it.
+     */
+    DashboardSnapshotDto snapshot(List<ServiceMetricDto> pods) {
+        sent = byPodName(pods);
+        baselined = true;
+        return DashboardSnapshotDto.builder()
+                .seq(seq)
+                .pods(pods)
+                .build();
+    }
+
+    /**
+     * What the dashboards were last sent, at the current seq, for one dashboard that joins late or
+     * missed a delta; the others are not affected and the next delta applies to both.
+     */
+    DashboardSnapshotDto resend() {
+        return DashboardSnapshotDto.builder()
+                .seq(seq)
+                .pods(new ArrayList<>(sent.values()))
+                .build();
+    }
+
+    boolean isBaselined() {
+        return baselined;
+    }
+
+    private static Map<String, ServiceMetricDto> byPodName(List<ServiceMetricDto> pods) {
+        Map<String, ServiceMetricDto> byPodName = new LinkedHashMap<>();
+        pods.forEach(pod -> byPodName.put(pod.getPodName(), pod));
+        return byPodName;
+    }
+
+    private static Map<String, Object> changedFields(ServiceMetricDto previous, ServiceMetricDto current) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        putIfChanged(changes, "serviceName", previous, current, ServiceMetricDto::getServiceName);
+        putIfChanged(changes, "status", previous, current, ServiceMetricDto::getStatus);
+        putIfChanged(changes, "cpuUsage", previous, current, ServiceMetricDto::getCpuUsage);
+        putIfChanged(changes, "memoryUsage", previous, current, ServiceMetricDto::getMemoryUsage);
+        putIfChanged(changes, "cpuMillicores", previous, current, ServiceMetricDto::getCpuMillicores);
+        putIfChanged(changes, "memoryBytes", previous, current, ServiceMetricDto::getMemoryBytes);
+        putIfChanged(changes, "startedAt", previous, current, ServiceMetricDto::getStartedAt);
+        putIfChanged(changes, "restarts", previous, current, ServiceMetricDto::getRestarts);
+        return changes;
+    }
+
+    private static void putIfChanged(Map<String, Object> changes, String field, ServiceMetricDto previous,
+                                     ServiceMetricDto current, Function<ServiceMetricDto, Object> getter) {
+        Object value = getter.apply(current);
+        if (!Objects.equals(getter.apply(previous), value)) {
+            changes.put(field, value);
+        }
+    }
+}
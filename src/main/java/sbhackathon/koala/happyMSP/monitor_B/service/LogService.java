@@ -4,9 +4,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 @Slf4j
@@ -16,11 +21,12 @@ public class LogService {
 
     // 비동기 실행을 위해 Executor 주입 (MonitorAsyncConfig의 monitorExecutor 사용)
     private final Executor monitorExecutor;
+    private final ProcessRunner processRunner;
 
     public String getPodLogs(String podName, int lines) {
         if (podName == null || podName.isBlank()) return "Pod name is required.";
         if (!isValidPodName(podName)) return "Invalid pod name.";
-        return executeCommand("kubectl", "logs", "--tail=" + lines, podName);
+        return executeCommand(List.of("kubectl", "logs", "--tail=" + lines, podName));
     }
 
     /**
@@ -37,38 +43,42 @@ public class LogService {
         }
 
         monitorExecutor.execute(() -> {
-            Process process = null;
             try {
                 log.info("Start streaming logs for pod: {}", podName);
                 // -f: follow (실시간), --tail=300: 초기 300줄 표시
-                ProcessBuilder pb = new ProcessBuilder("kubectl", "logs", "-f", "--tail=300", podName);
-                pb.redirectErrorStream(true); // 에러 로그도 함께 전송
-                process = pb.start();
-
-                final Process finalProcess = process;
-                // 클라이언트 연결 종료 시 프로세스 kill
-                emitter.onCompletion(() -> destroyProcess(finalProcess, podName));
-                emitter.onTimeout(() -> destroyProcess(finalProcess, podName));
-                emitter.onError((e) -> destroyProcess(finalProcess, podName));
-
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        // 각 줄을 SSE 이벤트로 전송
-                        emitter.send(SseEmitter.event().data(line));
-                    }
-                }
+                // 스트림은 오래 유지되므로 kubectl 동시 실행 제한에서 제외
+                ProcessResult result = processRunner.run(ProcessSpec.builder()
+                        .command(List.of("kubectl", "logs", "-f", "--tail=300", podName))
+                        .mergeStderr(true) // 에러 로그도 함께 전송
+                        .exemptFromLimit(true)
+                        .maxCapturedChars(4 * 1024)
+                        .commandType("kubectl logs -f")
+                        .onStart(process -> {
+                            // 클라이언트 연결 종료 시 프로세스 kill
+                            emitter.onCompletion(() -> destroyProcess(process, podName));
+                            emitter.onTimeout(() -> destroyProcess(process, podName));
+                            emitter.onError((e) -> destroyProcess(process, podName));
+                        })
+                        // 각 줄을 SSE 이벤트로 전송, 전송 실패 시 프로세스 종료
+                        .stdoutHandler(line -> {
+                            try {
+                                emitter.send(SseEmitter.event().data(line));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .build());
 
+                log.debug("Log stream for pod {} ended with exit code {}", podName, result.getExitCode());
                 // 프로세스가 자연 종료되면 Emitter도 종료
                 emitter.complete();
 
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                emitter.complete();
             } catch (Exception e) {
                 log.error("Error streaming logs for {}: {}", podName, e.getMessage());
                 emitter.completeWithError(e);
-            } finally {
-                if (process != null && process.isAlive()) {
-                    process.destroy();
-                }
             }
         });
     }
@@ -76,7 +86,7 @@ public class LogService {
     private void destroyProcess(Process process, String podName) {
         if (process != null && process.isAlive()) {
             log.debug("Stopping log stream process for pod: {}", podName);
-            process.destroy();
+            ProcessRunner.killTree(process);
         }
     }
 
@@ -84,20 +94,22 @@ public class LogService {
         return podName.matches("^[a-z0-9-]+$");
     }
 
-    private String executeCommand(String... command) {
+    private String executeCommand(List<String> command) {
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            StringBuilder out = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String line;
-                while ((line = br.readLine()) != null) out.append(line).append("\n");
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(command)
+                    .mergeStderr(true)
+                    .timeout(Duration.ofSeconds(30))
+                    .build());
+            if (result.isTimedOut()) {
+                return "Error: command timed out\n" + result.getStdout();
             }
-            p.waitFor();
-            return out.toString();
+            return result.getStdout();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: " + e.getMessage();
         } catch (Exception e) {
             return "Error: " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+}
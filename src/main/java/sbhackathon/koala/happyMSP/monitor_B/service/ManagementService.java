@@ -4,6 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import sbhackathon.koala.happyMSP.build_A.repository.RepoRepository;
+import sbhackathon.koala.happyMSP.infra.process.ProcessResult;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
+import sbhackathon.koala.happyMSP.infra.process.ProcessSpec;
+
+import java.time.Duration;
+import java.util.List;
 
 @Slf4j
 @Service
@@ -12,6 +18,7 @@ public class ManagementService {
 
     private final RepoRepository repoRepository;
     private final LogService logService;
+    private final ProcessRunner processRunner;
 
     // 1. 파드 재시작
     public void restartPod(String podName) {
@@ -68,9 +75,20 @@ public class ManagementService {
 
     private void executeCommand(String... command) {
         try {
-            new ProcessBuilder(command).start().waitFor();
+            ProcessResult result = processRunner.run(ProcessSpec.builder()
+                    .command(List.of(command))
+                    .mergeStderr(true)
+                    .timeout(Duration.ofSeconds(30))
+                    .build());
+            if (!result.isSuccess()) {
+                log.error("Command failed (exit code: {}, timed out: {}): {}",
+                        result.getExitCode(), result.isTimedOut(), result.getStdout().trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Command interrupted: {}", e.getMessage());
         } catch (Exception e) {
             log.error("Command failed: {}", e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
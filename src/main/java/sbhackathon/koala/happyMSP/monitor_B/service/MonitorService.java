@@ -4,10 +4,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import sbhackathon.koala.happyMSP.build_A.repository.BuildJobRepository;
 import sbhackathon.koala.happyMSP.build_A.repository.EcrRepository;
 import sbhackathon.koala.happyMSP.build_A.repository.RepoRepository;
+import sbhackathon.koala.happyMSP.deployment_CD.repository.ServiceRepository;
+import sbhackathon.koala.happyMSP.entity.BuildJob;
 import sbhackathon.koala.happyMSP.entity.Ecr;
 import sbhackathon.koala.happyMSP.entity.Repository;
+import sbhackathon.koala.happyMSP.entity.ServiceStatus;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -20,6 +24,8 @@ public class MonitorService {
 
     private final RepoRepository repoRepository;
     private final EcrRepository ecrRepository;
+    private final BuildJobRepository buildJobRepository;
+    private final ServiceRepository serviceRepository;
 
     private final PipelineNotificationService notifier;
     private final AwsEcrCheckService awsEcrCheckService;
@@ -142,14 +148,22 @@ public class MonitorService {
 
         while (System.currentTimeMillis() - start < 600_000) { // 10분
             Optional<Repository> repoOpt = repoRepository.findByUri(searchUrl);
+            List<sbhackathon.koala.happyMSP.entity.Service> buildServices = repoOpt
+                    .map(this::findCurrentBuildServices)
+                    .orElse(List.of());
 
-            if (repoOpt.isPresent() && !repoOpt.get().getServices().isEmpty()) {
-                Repository repo = repoOpt.get();
+            if (!buildServices.isEmpty()) {
                 boolean allImagesReady = true;
 
-                for (sbhackathon.koala.happyMSP.entity.Service service : repo.getServices()) {
+                for (sbhackathon.koala.happyMSP.entity.Service service : buildServices) {
                     List<Ecr> ecrs = ecrRepository.findByService_Id(service.getId());
 
+                    // 빌드 실패(또는 중단 후 복구 불가)로 이미지가 생기지 않는 서비스는 기다리지 않음
+                    if (ecrs.isEmpty() && service.getStatus() == ServiceStatus.FAILED) {
+                        notifier.publish(repoUrl, "stage-1-failed", "❌ Build failed: " + service.getName());
+                        return null;
+                    }
+
                     if (ecrs.isEmpty()) {
                         allImagesReady = false;
                         break;
@@ -166,8 +180,8 @@ public class MonitorService {
                 }
 
                 if (allImagesReady) {
-                    notifier.publish(repoUrl, "stage-1-success", "✅ Build complete: " + repo.getServices().size() + " service images registered");
-                    return repo.getServices();
+                    notifier.publish(repoUrl, "stage-1-success", "✅ Build complete: " + buildServices.size() + " service images registered");
+                    return buildServices;
                 }
             }
             sleep(3000);
@@ -177,6 +191,14 @@ public class MonitorService {
         return null;
     }
 
+    // 이전 빌드의 서비스(과거 실패 기록 포함)는 제외하고, 가장 최근 빌드 작업이 등록한 서비스만 확인
+    private List<sbhackathon.koala.happyMSP.entity.Service> findCurrentBuildServices(Repository repo) {
+        return buildJobRepository.findFirstByRepositoryIdOrderByIdDesc(repo.getId())
+                .map(BuildJob::getId)
+                .map(serviceRepository::findByBuildJobId)
+                .orElse(List.of());
+    }
+
     private String extractRepoUri(String repoUrl) {
         String searchUrl = repoUrl;
         if (searchUrl.startsWith("https://")) {
@@ -0,0 +1,260 @@
+package sbhackathon.koala.happyMSP.monitor_B.service;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.util.Config;
+import io.kubernetes.client.util.Watch;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * List+watch cache of the pods of a namespace shared by every dashboard, so any number of open
+ * dashboards cost one watch connection per namespace. Pods are kept sorted by name, which makes
+ * the pods of a project ("&lt;project&gt;-&lt;service&gt;-...") a range of the cache.
+ * <p>
+ * The watch resumes from the last resourceVersion it saw (kept current by bookmarks), so a
+ * reconnect replays nothing; the namespace is only listed again when the API server answers
+ * 410 Gone because that version was compacted away. Failed reconnects back off exponentially.
+ */
+@Slf4j
+@Component
+public class PodInformer {
+
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final int HTTP_GONE = 410;
+
+    /**
+     * Called on the namespace's watch thread for every change of the cache.
+     *
+     * @param type ADDED, MODIFIED or DELETED
+     */
+    @FunctionalInterface
+    public interface PodListener {
+        void onPodEvent(String namespace, String type, V1Pod pod);
+    }
+
+    private final Map<String, NamespaceWatch> watches = new ConcurrentHashMap<>();
+    private final List<PodListener> listeners = new CopyOnWriteArrayList<>();
+
+    private ApiClient client;
+    private CoreV1Api api;
+
+    @PostConstruct
+    public void init() {
+        try {
+            client = Config.defaultClient();
+            // Watches stay open until the API server ends them
+            client.setReadTimeout(0);
+            api = new CoreV1Api(client);
+        } catch (IOException e) {
+            log.error("K8s Client Init Failed", e);
+        }
+    }
+
+    public void addListener(PodListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts the namespace's list+watch unless it is already running.
+     */
+    public void watch(String namespace) {
+        if (api == null) {
+            return;
+        }
+        watches.computeIfAbsent(namespace, ns -> {
+            NamespaceWatch watch = new NamespaceWatch(ns);
+            watch.thread.start();
+            return watch;
+        });
+    }
+
+    /**
+     * @return the cached pods whose name starts with the prefix, sorted by name
+     */
+    public List<V1Pod> podsWithPrefix(String namespace, String prefix) {
+        NamespaceWatch watch = watches.get(namespace);
+        if (watch == null || prefix.isEmpty()) {
+            return List.of();
+        }
+        // Names starting with the prefix sort before the prefix with its last character incremented
+        char last = prefix.charAt(prefix.length() - 1);
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+        return new ArrayList<>(watch.pods.subMap(prefix, end).values());
+    }
+
+    private void notifyListeners(String namespace, String type, V1Pod pod) {
+        for (PodListener listener : listeners) {
+            try {
+                listener.onPodEvent(namespace, type, pod);
+            } catch (Exception e) {
+                log.error("Pod listener failed on {} {}", type, pod.getMetadata().getName(), e);
+            }
+        }
+    }
+
+    private final class NamespaceWatch implements Runnable {
+        private final String namespace;
+        private final ConcurrentNavigableMap<String, V1Pod> pods = new ConcurrentSkipListMap<>();
+        private final Thread thread;
+        // Where the next watch resumes; null forces a relist
+        private String resourceVersion;
+        private long backoffMillis = MIN_BACKOFF_MILLIS;
+
+        private NamespaceWatch(String namespace) {
+            this.namespace = namespace;
+            this.thread = new Thread(this, "pod-informer-" + namespace);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    if (resourceVersion == null) {
+                        resourceVersion = relist();
+                    }
+                    // The API server ends a watch after its timeout; resume right away unless it ended empty
+                    if (watch()) {
+                        continue;
+                    }
+                    backOff("watch ended without events");
+                } catch (Exception e) {
+                    if (isGone(e)) {
+                        log.info("Pod watch of namespace {}: resourceVersion {} is gone, relisting", namespace, resourceVersion);
+                        resourceVersion = null;
+                        continue;
+                    }
+                    backOff(e.getMessage());
+                }
+            }
+        }
+
+        private void backOff(String reason) {
+            // Up to 50% jitter so watches of several instances do not reconnect in lockstep
+            long delay = backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+            log.warn("Pod watch of namespace {} lost, resuming from {} in {}ms: {}", namespace, resourceVersion,
+                    delay, reason);
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // The resourceVersion to resume from was compacted away, as an error event or as the watch request's answer
+        private boolean isGone(Exception e) {
+            return e instanceof ResourceVersionGoneException
+                    || (e instanceof ApiException apiException && apiException.getCode() == HTTP_GONE);
+        }
+
+        /**
+         * Replaces the cache with a fresh list, notifying listeners of the differences.
+         *
+         * @return the list's resourceVersion to watch from
+         */
+        private String relist() throws Exception {
+            V1PodList list = api.listNamespacedPod(namespace).execute();
+
+            Set<String> listed = new HashSet<>();
+            for (V1Pod pod : list.getItems()) {
+                String name = pod.getMetadata().getName();
+                listed.add(name);
+                V1Pod cached = pods.put(name, pod);
+                if (cached == null) {
+                    notifyListeners(namespace, "ADDED", pod);
+                } else if (!Objects.equals(cached.getMetadata().getResourceVersion(), pod.getMetadata().getResourceVersion())) {
+                    notifyListeners(namespace, "MODIFIED", pod);
+                }
+            }
+            for (V1Pod cached : new ArrayList<>(pods.values())) {
+                if (!listed.contains(cached.getMetadata().getName())) {
+                    pods.remove(cached.getMetadata().getName());
+                    notifyListeners(namespace, "DELETED", cached);
+                }
+            }
+            log.info("Listed {} pods in namespace {}", pods.size(), namespace);
+            return list.getMetadata().getResourceVersion();
+        }
+
+        /**
+         * Watches from {@link #resourceVersion}, advancing it with every event and bookmark.
+         *
+         * @return true if the watch received anything before it ended
+         */
+        private boolean watch() throws Exception {
+            boolean received = false;
+            Call call = api.listNamespacedPod(namespace)
+                    .resourceVersion(resourceVersion)
+                    .allowWatchBookmarks(true)
+                    .watch(true)
+                    .buildCall(null);
+
+            try (Watch<V1Pod> watch = Watch.createWatch(client, call, new TypeToken<Watch.Response<V1Pod>>(){}.getType())) {
+                for (Watch.Response<V1Pod> item : watch) {
+                    if ("ERROR".equals(item.type)) {
+                        if (item.status != null && item.status.getCode() != null && item.status.getCode() == HTTP_GONE) {
+                            throw new ResourceVersionGoneException();
+                        }
+                        throw new IOException("Watch error: " + (item.status != null ? item.status.getMessage() : "unknown"));
+                    }
+                    V1Pod pod = item.object;
+                    if (pod == null || pod.getMetadata() == null) {
+                        continue;
+                    }
+                    // Connected and receiving; a later failure starts backing off from the minimum again
+                    received = true;
+                    backoffMillis = MIN_BACKOFF_MILLIS;
+                    if (pod.getMetadata().getResourceVersion() != null) {
+                        resourceVersion = pod.getMetadata().getResourceVersion();
+                    }
+                    // Bookmarks only carry the current resourceVersion
+                    if ("BOOKMARK".equals(item.type) || pod.getMetadata().getName() == null) {
+                        continue;
+                    }
+
+                    if ("DELETED".equals(item.type)) {
+                        pods.remove(pod.getMetadata().getName());
+                    } else {
+                        pods.put(pod.getMetadata().getName(), pod);
+                    }
+                    notifyListeners(namespace, item.type, pod);
+                }
+            }
+            return received;
+        }
+    }
+
+    private static final class ResourceVersionGoneException extends IOException {
+        private ResourceVersionGoneException() {
+            super("410 Gone");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watches.values().forEach(watch -> watch.thread.interrupt());
+    }
+}
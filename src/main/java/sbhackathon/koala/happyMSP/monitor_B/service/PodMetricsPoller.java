@@ -0,0 +1,145 @@
+package sbhackathon.koala.happyMSP.monitor_B.service;
+
+import io.kubernetes.client.Metrics;
+import io.kubernetes.client.custom.ContainerMetrics;
+import io.kubernetes.client.custom.PodMetrics;
+import io.kubernetes.client.custom.PodMetricsList;
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.util.Config;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Polls pod CPU and memory usage from the metrics.k8s.io API, once per namespace however many
+ * dashboards show it, and keeps the latest usage per pod.
+ */
+@Slf4j
+@Component
+public class PodMetricsPoller {
+
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+
+    /**
+     * @param cpuMillicores summed over the pod's containers
+     * @param memoryBytes   working set, summed over the pod's containers
+     */
+    public record Usage(long cpuMillicores, long memoryBytes) {}
+
+    /**
+     * Called on the poller thread after each poll of a namespace.
+     */
+    @FunctionalInterface
+    public interface MetricsListener {
+        void onMetrics(String namespace);
+    }
+
+    private final Map<String, Map<String, Usage>> usageByNamespace = new ConcurrentHashMap<>();
+    private final Map<String, BooleanSupplier> polledNamespaces = new ConcurrentHashMap<>();
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pod-metrics-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Metrics metrics;
+
+    @PostConstruct
+    public void init() {
+        try {
+            ApiClient client = Config.defaultClient();
+            metrics = new Metrics(client);
+        } catch (IOException e) {
+            log.error("K8s Client Init Failed", e);
+        }
+    }
+
+    public void addListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Polls the namespace from now on, skipping polls while {@code active} is false.
+     */
+    public void watch(String namespace, BooleanSupplier active) {
+        if (metrics == null) {
+            return;
+        }
+        if (polledNamespaces.putIfAbsent(namespace, active) == null) {
+            poller.scheduleWithFixedDelay(() -> poll(namespace), 0, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the pod's usage from the last poll, or null if metrics-server has none (yet)
+     */
+    public Usage usageOf(String namespace, String podName) {
+        return usageByNamespace.getOrDefault(namespace, Map.of()).get(podName);
+    }
+
+    private void poll(String namespace) {
+        if (!polledNamespaces.get(namespace).getAsBoolean()) {
+            return;
+        }
+        try {
+            PodMetricsList podMetricsList = metrics.getPodMetrics(namespace);
+            Map<String, Usage> usage = new HashMap<>();
+            for (PodMetrics podMetrics : podMetricsList.getItems()) {
+                long cpuMillicores = 0;
+                long memoryBytes = 0;
+                for (ContainerMetrics container : podMetrics.getContainers()) {
+                    cpuMillicores += toMillis(container.getUsage().get("cpu"));
+                    memoryBytes += toLong(container.getUsage().get("memory"));
+                }
+                usage.put(podMetrics.getMetadata().getName(), new Usage(cpuMillicores, memoryBytes));
+            }
+            usageByNamespace.put(namespace, Map.copyOf(usage));
+        } catch (ApiException e) {
+            // 404 until metrics-server is installed
+            log.warn("Failed to poll pod metrics of namespace {}: HTTP {}", namespace, e.getCode());
+            return;
+        } catch (Exception e) {
+            log.error("Metric Poller Error", e);
+            return;
+        }
+
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.onMetrics(namespace);
+            } catch (Exception e) {
+                log.error("Metrics listener failed for namespace {}", namespace, e);
+            }
+        }
+    }
+
+    // "250m" or "1" CPU -> millicores
+    private static long toMillis(Quantity quantity) {
+        return quantity == null ? 0 : quantity.getNumber().multiply(BigDecimal.valueOf(1000)).longValue();
+    }
+
+    // "128Mi" memory -> bytes
+    private static long toLong(Quantity quantity) {
+        return quantity == null ? 0 : quantity.getNumber().longValue();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+}
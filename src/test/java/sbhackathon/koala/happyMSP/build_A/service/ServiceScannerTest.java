@@ -0,0 +1,142 @@
+package sbhackathon.koala.happyMSP.build_A.service;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.FileSystemUtils;
+import sbhackathon.koala.happyMSP.build_A.dto.BuildGraphDto;
+import sbhackathon.koala.happyMSP.build_A.dto.ServiceScanResultDto;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceScannerTest {
+
+    private final ServiceScanner scanner = new ServiceScanner();
+
+    @TempDir
+    Path repoDir;
+
+    private Git git;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        git = Git.init().setDirectory(repoDir.toFile()).call();
+    }
+
+    @AfterEach
+    void tearDown() {
+        git.close();
+    }
+
+    @Test
+    void scanServices_멀티스테이지와_ARG_치환된_베이스_이미지() throws Exception {
+        writeService("web", """
+                ARG NODE_VERSION=20
+                ARG RUNTIME="nginx:1.27-alpine"
+                FROM --platform=linux/amd64 node:${NODE_VERSION}-alpine AS build
+                ARG NODE_VERSION=18
+                RUN npm ci
+                FROM build AS test
+                FROM $RUNTIME
+                COPY --from=build /app/dist /usr/share/nginx/html
+                """);
+
+        ServiceScanResultDto result = scanner.scanServices(git.getRepository(), commit().getTree());
+
+        assertThat(result.getServices().get(0).getBaseImages())
+                .containsExactly("node:20-alpine", "nginx:1.27-alpine");
+    }
+
+    @Test
+    void scanServices_scratch와_미해결_변수는_베이스_이미지에서_제외() throws Exception {
+        writeService("api", """
+                ARG BASE
+                FROM golang:1.22 \\
+                    AS builder
+                FROM ${BASE}
+                FROM scratch
+                """);
+
+        ServiceScanResultDto result = scanner.scanServices(git.getRepository(), commit().getTree());
+
+        assertThat(result.getServices().get(0).getBaseImages()).containsExactly("golang:1.22");
+    }
+
+    @Test
+    void buildGraph_서비스_이미지_의존성과_공유_스테이지() throws Exception {
+        writeService("base", """
+                FROM eclipse-temurin:17-jre
+                RUN useradd app
+                """);
+        writeService("order", """
+                FROM gradle:8-jdk17 AS build
+                RUN apt-get update && apt-get install -y git
+                COPY . .
+                FROM base
+                COPY --from=build /app.jar /app.jar
+                """);
+        writeService("user", """
+                FROM gradle:8-jdk17 AS build
+                RUN apt-get update && apt-get install -y git
+                RUN gradle --version
+                COPY . .
+                FROM base:latest
+                """);
+
+        BuildGraphDto graph = scanner.buildGraph(git.getRepository(), commit().getTree());
+
+        assertThat(graph.getBuildOrder()).containsExactly("base", "order", "user");
+        assertThat(graph.dependenciesOf("order")).containsEntry("base", "base");
+        assertThat(graph.dependenciesOf("user")).containsEntry("base:latest", "base");
+        assertThat(graph.baseImagesOf(java.util.List.of("order"))).containsExactly("gradle:8-jdk17");
+
+        assertThat(graph.getSharedStages()).hasSize(1);
+        BuildGraphDto.SharedStage stage = graph.getSharedStages().get(0);
+        assertThat(stage.getServices()).containsExactly("order", "user");
+        assertThat(stage.getDockerfile()).isEqualTo("FROM gradle:8-jdk17\nRUN apt-get update && apt-get install -y git\n");
+    }
+
+    @Test
+    void scanServices_커밋_트리에서_체크아웃_없이_스캔() throws Exception {
+        writeService("base", """
+                FROM eclipse-temurin:17-jre
+                """);
+        writeService("order", """
+                FROM base
+                EXPOSE 8080
+                """);
+        Files.createDirectories(repoDir.resolve("services").resolve("docs"));
+        Files.writeString(repoDir.resolve("services").resolve("docs").resolve("README.md"), "docs");
+
+        RevCommit commit = commit();
+        // The scan must not touch the working tree
+        FileSystemUtils.deleteRecursively(repoDir.resolve("services"));
+
+        ServiceScanResultDto result = scanner.scanServices(git.getRepository(), commit.getTree());
+
+        assertThat(result.getServices()).extracting(ServiceScanResultDto.ServiceInfo::getName)
+                .containsExactly("base", "order");
+        assertThat(result.getServices().get(1).getPortNumber()).isEqualTo(8080);
+        assertThat(result.getBaseImages()).containsExactly("eclipse-temurin:17-jre");
+        assertThat(scanner.buildGraph(git.getRepository(), commit.getTree()).getBuildOrder())
+                .containsExactly("base", "order");
+    }
+
+    private void writeService(String name, String dockerfile) throws IOException {
+        Path dir = Files.createDirectories(repoDir.resolve("services").resolve(name));
+        Files.writeString(dir.resolve("Dockerfile"), dockerfile);
+    }
+
+    private RevCommit commit() throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage("services").setAuthor("test", "test@example.com")
+                .setCommitter("test", "test@example.com").call();
+    }
+}
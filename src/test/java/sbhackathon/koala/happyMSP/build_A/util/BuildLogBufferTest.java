@@ -0,0 +1,53 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BuildLogBufferTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void tail_최대크기_초과시_오래된_라인_제거() throws IOException {
+        Path spillFile = tempDir.resolve("build.log.gz");
+        List<String> streamed = new ArrayList<>();
+
+        try (BuildLogBuffer buffer = new BuildLogBuffer("build-1", 16, spillFile, streamed::add)) {
+            for (int i = 0; i < 10; i++) {
+                buffer.append("line-" + i);
+            }
+
+            assertThat(buffer.tail()).isEqualTo("line-8\nline-9\n");
+            assertThat(buffer.getTotalLines()).isEqualTo(10);
+        }
+
+        assertThat(streamed).hasSize(10);
+    }
+
+    @Test
+    void close_전체_로그는_파일에_보존() throws IOException {
+        Path spillFile = tempDir.resolve("build.log.gz");
+
+        try (BuildLogBuffer buffer = new BuildLogBuffer("build-2", 8, spillFile, null)) {
+            buffer.append("first");
+            buffer.append("second");
+            buffer.append("third");
+        }
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(spillFile))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("first\nsecond\nthird\n");
+        }
+    }
+}
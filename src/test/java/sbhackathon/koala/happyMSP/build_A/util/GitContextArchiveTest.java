@@ -0,0 +1,105 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitContextArchiveTest {
+
+    @TempDir
+    Path repoDir;
+
+    @Test
+    void write_dockerignore_제외_규칙을_적용한_tar_생성() throws Exception {
+        Path serviceDir = Files.createDirectories(repoDir.resolve("services/order"));
+        write(serviceDir.resolve("Dockerfile"), "FROM node:20\nCOPY . .\n");
+        write(serviceDir.resolve(".dockerignore"), "node_modules\n**/*.log\ndocs\n!docs/README.md\n");
+        write(serviceDir.resolve("src/index.js"), "console.log(1)");
+        write(serviceDir.resolve("src/debug.log"), "debug");
+        write(serviceDir.resolve("node_modules/left-pad/index.js"), "module.exports = 1");
+        write(serviceDir.resolve("docs/README.md"), "readme");
+        write(serviceDir.resolve("docs/design.md"), "design");
+
+        try (Git git = Git.init().setDirectory(repoDir.toFile()).call()) {
+            git.add().addFilepattern(".").call();
+            RevCommit commit = git.commit().setMessage("order").setAuthor("test", "test@example.com")
+                    .setCommitter("test", "test@example.com").call();
+
+            ObjectId serviceTree;
+            try (TreeWalk treeWalk = TreeWalk.forPath(git.getRepository(), "services/order", commit.getTree())) {
+                serviceTree = treeWalk.getObjectId(0);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ContextSummary summary = GitContextArchive.write(git.getRepository(), serviceTree,
+                    DockerIgnoreMatcher.of(List.of("src")), out);
+
+            assertThat(tarFiles(out)).containsExactlyInAnyOrder(".dockerignore", "Dockerfile", "docs/README.md", "src/index.js");
+            assertThat(summary.files()).isEqualTo(4);
+            assertThat(summary.defaultIgnoreApplied()).isFalse();
+        }
+    }
+
+    @Test
+    void write_dockerignore가_없으면_기본_제외_목록_적용() throws Exception {
+        Path serviceDir = Files.createDirectories(repoDir.resolve("services/web"));
+        write(serviceDir.resolve("Dockerfile"), "FROM node:20\nCOPY . .\n");
+        write(serviceDir.resolve("index.js"), "console.log(1)");
+        write(serviceDir.resolve("node_modules/react/index.js"), "x".repeat(1000));
+        write(serviceDir.resolve("packages/ui/node_modules/react/index.js"), "x".repeat(1000));
+
+        try (Git git = Git.init().setDirectory(repoDir.toFile()).call()) {
+            git.add().addFilepattern(".").call();
+            RevCommit commit = git.commit().setMessage("web").setAuthor("test", "test@example.com")
+                    .setCommitter("test", "test@example.com").call();
+
+            ObjectId serviceTree;
+            try (TreeWalk treeWalk = TreeWalk.forPath(git.getRepository(), "services/web", commit.getTree())) {
+                serviceTree = treeWalk.getObjectId(0);
+            }
+            DockerIgnoreMatcher defaultIgnore = DockerIgnoreMatcher.of(List.of("**/node_modules"));
+
+            ContextSummary measured = GitContextArchive.measure(git.getRepository(), serviceTree, defaultIgnore);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ContextSummary written = GitContextArchive.write(git.getRepository(), serviceTree, defaultIgnore, out);
+
+            assertThat(tarFiles(out)).containsExactlyInAnyOrder("Dockerfile", "index.js");
+            assertThat(measured).isEqualTo(written);
+            assertThat(measured.defaultIgnoreApplied()).isTrue();
+            assertThat(measured.topContributors()).containsOnlyKeys("Dockerfile", "index.js");
+        }
+    }
+
+    private List<String> tarFiles(ByteArrayOutputStream out) throws Exception {
+        List<String> files = new ArrayList<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    files.add(entry.getName());
+                }
+            }
+        }
+        return files;
+    }
+
+    private void write(Path file, String content) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageTagGeneratorTest {
+
+    private final ImageTagGenerator generator = new ImageTagGenerator();
+
+    @Test
+    void generate_짧은_SHA로_태그_생성() {
+        String tag = generator.generate("MSA-Demo", "Auth", "82c96df1234567");
+
+        assertThat(tag).isEqualTo("msa-demo-auth:82c96df");
+    }
+
+    @Test
+    void generateContentHash_같은_트리와_인자는_같은_키() {
+        String first = generator.generateContentHash("4b825dc642cb6eb9a060e54bf8d69288fbee4904",
+                Map.of("A", "1", "B", "2"));
+        String second = generator.generateContentHash("4b825dc642cb6eb9a060e54bf8d69288fbee4904",
+                Map.of("B", "2", "A", "1"));
+
+        assertThat(first).isEqualTo(second).hasSize(64);
+    }
+
+    @Test
+    void generateContentHash_트리나_인자가_다르면_다른_키() {
+        String base = generator.generateContentHash("4b825dc642cb6eb9a060e54bf8d69288fbee4904", Map.of());
+
+        assertThat(generator.generateContentHash("8f94139338f9404f26296befa88755fc2598c289", Map.of()))
+                .isNotEqualTo(base);
+        assertThat(generator.generateContentHash("4b825dc642cb6eb9a060e54bf8d69288fbee4904", Map.of("A", "1")))
+                .isNotEqualTo(base);
+    }
+
+    @Test
+    void generateContentHash_트리ID_없으면_예외() {
+        assertThatThrownBy(() -> generator.generateContentHash(null, Map.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
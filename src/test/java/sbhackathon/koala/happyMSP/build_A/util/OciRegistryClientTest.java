@@ -0,0 +1,152 @@
+package sbhackathon.koala.happyMSP.build_A.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OciRegistryClientTest {
+
+    private static final String DIGEST = "sha256:abc123";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private OciRegistryClient client;
+    // 스텁 레지스트리가 받은 요청: "METHOD path?query"
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile byte[] uploadedBody;
+    private volatile String manifestContentType;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+        URI baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+        client = new OciRegistryClient(HttpClient.newHttpClient(), baseUri, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void uploadBlob_mount_성공시_업로드하지_않음() throws Exception {
+        server.createContext("/v2/shop/api/blobs/uploads/", exchange -> {
+            record(exchange);
+            respond(exchange, 201, null);
+        });
+
+        boolean mounted = client.uploadBlob("shop/api", DIGEST, blob("layer"), "shop/base");
+
+        assertThat(mounted).isTrue();
+        assertThat(requests).containsExactly("POST /v2/shop/api/blobs/uploads/?mount=" + DIGEST + "&from=shop/base");
+    }
+
+    @Test
+    void uploadBlob_mount_불가시_업로드_세션으로_PUT() throws Exception {
+        server.createContext("/v2/shop/api/blobs/uploads/", exchange -> {
+            record(exchange);
+            if ("POST".equals(exchange.getRequestMethod())) {
+                // mount를 지원하지 않는 레지스트리는 일반 업로드 세션으로 응답
+                exchange.getResponseHeaders().add("Location", "/v2/shop/api/blobs/uploads/session-1?state=x");
+                respond(exchange, 202, null);
+            } else {
+                uploadedBody = exchange.getRequestBody().readAllBytes();
+                respond(exchange, 201, null);
+            }
+        });
+
+        boolean mounted = client.uploadBlob("shop/api", DIGEST, blob("layer"), "shop/base");
+
+        assertThat(mounted).isFalse();
+        assertThat(requests).containsExactly(
+                "POST /v2/shop/api/blobs/uploads/?mount=" + DIGEST + "&from=shop/base",
+                "PUT /v2/shop/api/blobs/uploads/session-1?state=x&digest=" + DIGEST);
+        assertThat(new String(uploadedBody, StandardCharsets.UTF_8)).isEqualTo("layer");
+    }
+
+    @Test
+    void uploadBlob_업로드_실패시_IOException() throws Exception {
+        server.createContext("/v2/shop/api/blobs/uploads/", exchange -> {
+            record(exchange);
+            if ("POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Location", "/v2/shop/api/blobs/uploads/session-1");
+                respond(exchange, 202, null);
+            } else {
+                respond(exchange, 400, "DIGEST_INVALID");
+            }
+        });
+
+        assertThatThrownBy(() -> client.uploadBlob("shop/api", DIGEST, blob("layer"), null))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("400 DIGEST_INVALID");
+        assertThat(requests).containsExactly(
+                "POST /v2/shop/api/blobs/uploads/",
+                "PUT /v2/shop/api/blobs/uploads/session-1?digest=" + DIGEST);
+    }
+
+    @Test
+    void putManifest_레지스트리가_알려준_digest_반환() throws Exception {
+        server.createContext("/v2/shop/api/manifests/", exchange -> {
+            record(exchange);
+            manifestContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            exchange.getResponseHeaders().add("Docker-Content-Digest", "sha256:manifest");
+            respond(exchange, 201, null);
+        });
+
+        String digest = client.putManifest("shop/api", "v1", "{}".getBytes(StandardCharsets.UTF_8),
+                OciRegistryClient.OCI_MANIFEST);
+
+        assertThat(digest).isEqualTo("sha256:manifest");
+        assertThat(requests).containsExactly("PUT /v2/shop/api/manifests/v1");
+        assertThat(manifestContentType).isEqualTo(OciRegistryClient.OCI_MANIFEST);
+    }
+
+    @Test
+    void putManifest_201이_아니면_IOException() {
+        server.createContext("/v2/shop/api/manifests/", exchange -> respond(exchange, 400, "MANIFEST_INVALID"));
+
+        assertThatThrownBy(() -> client.putManifest("shop/api", "v1", "{}".getBytes(StandardCharsets.UTF_8),
+                OciRegistryClient.OCI_MANIFEST))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("400 MANIFEST_INVALID");
+    }
+
+    private Path blob(String content) throws IOException {
+        return Files.writeString(tempDir.resolve("blob"), content);
+    }
+
+    private void record(HttpExchange exchange) {
+        URI uri = exchange.getRequestURI();
+        requests.add(exchange.getRequestMethod() + " " + uri.getRawPath()
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : ""));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
@@ -3,6 +3,7 @@ package sbhackathon.koala.happyMSP.infra;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sbhackathon.koala.happyMSP.infra.process.ProcessRunner;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -13,7 +14,7 @@ class KubectlExecutorManualTest {
     @Test
     void kubectl_사용가능_확인() {
         // given
-        KubectlExecutor executor = new KubectlExecutor();
+        KubectlExecutor executor = new KubectlExecutor(new ProcessRunner(8, 8));
 
         // when
         boolean available = executor.isKubectlAvailable();
@@ -0,0 +1,59 @@
+package sbhackathon.koala.happyMSP.infra.process;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessRunnerTest {
+
+    private final ProcessRunner runner = new ProcessRunner(8, 8);
+
+    @Test
+    void run_stderr가_파이프_버퍼보다_커도_멈추지_않음() throws Exception {
+        // stderr 약 1MB를 먼저 쓴 뒤 stdout에 출력
+        ProcessResult result = runner.run(ProcessSpec.builder()
+                .command(List.of("sh", "-c", "yes error-line | head -n 100000 >&2; echo done"))
+                .timeout(Duration.ofSeconds(30))
+                .maxCapturedChars(1024)
+                .build());
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getStdout()).isEqualTo("done\n");
+        assertThat(result.getStderr()).endsWith("error-line\n");
+        assertThat(result.getStderr().length()).isLessThanOrEqualTo(1024);
+    }
+
+    @Test
+    void run_타임아웃_초과시_프로세스_종료() throws Exception {
+        ProcessResult result = runner.run(ProcessSpec.builder()
+                .command(List.of("sh", "-c", "sleep 30"))
+                .timeout(Duration.ofMillis(300))
+                .build());
+
+        assertThat(result.isTimedOut()).isTrue();
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getDuration()).isLessThan(Duration.ofSeconds(10));
+        assertThat(runner.getMetrics().snapshot().get("sh -c").get("timeouts")).isEqualTo(1L);
+    }
+
+    @Test
+    void run_stdin을_읽지_않는_프로세스도_타임아웃에_종료() throws Exception {
+        // 파이프 버퍼보다 큰 입력을 쓰는 동안 프로세스가 stdin을 읽지 않음
+        ProcessResult result = runner.run(ProcessSpec.builder()
+                .command(List.of("sh", "-c", "sleep 30"))
+                .stdinWriter(stdin -> {
+                    byte[] chunk = new byte[64 * 1024];
+                    for (int i = 0; i < 1024; i++) {
+                        stdin.write(chunk);
+                    }
+                })
+                .timeout(Duration.ofMillis(300))
+                .build());
+
+        assertThat(result.isTimedOut()).isTrue();
+        assertThat(result.getDuration()).isLessThan(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,93 @@
+package sbhackathon.koala.happyMSP.monitor_B.service;
+
+import org.junit.jupiter.api.Test;
+import sbhackathon.koala.happyMSP.monitor_B.dto.DashboardDeltaDto;
+import sbhackathon.koala.happyMSP.monitor_B.dto.DashboardSnapshotDto;
+import sbhackathon.koala.happyMSP.monitor_B.dto.ServiceMetricDto;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DashboardViewTest {
+
+    private static final long STARTED_AT = 1_700_000_000_000L;
+
+    private final DashboardView view = new DashboardView();
+
+    @Test
+    void delta_추가_변경_삭제된_파드만_포함() {
+        view.snapshot(List.of(pod("shop-api-5d8f-abcde", "Running", 10), pod("shop-web-7c9a-fghij", "Running", 20)));
+
+        DashboardDeltaDto delta = view.delta(List.of(
+                pod("shop-api-5d8f-abcde", "Running", 15),
+                pod("shop-db-6b7c-klmno", "Pending", 0)));
+
+        assertThat(delta.getSeq()).isEqualTo(1);
+        assertThat(delta.getAdded()).extracting(ServiceMetricDto::getPodName).containsExactly("shop-db-6b7c-klmno");
+        // 바뀐 필드만 전송
+        assertThat(delta.getUpdated()).containsExactly(Map.of(
+                "podName", "shop-api-5d8f-abcde",
+                "cpuUsage", "15m",
+                "cpuMillicores", 15L));
+        assertThat(delta.getRemoved()).containsExactly("shop-web-7c9a-fghij");
+    }
+
+    @Test
+    void delta_변경이_없으면_null이고_seq_유지() {
+        List<ServiceMetricDto> pods = List.of(pod("shop-api-5d8f-abcde", "Running", 10));
+        view.snapshot(pods);
+
+        assertThat(view.delta(pods)).isNull();
+        assertThat(view.delta(List.of(pod("shop-api-5d8f-abcde", "Running", 11))).getSeq()).isEqualTo(1);
+        assertThat(view.delta(List.of(pod("shop-api-5d8f-abcde", "Failed", 11))).getSeq()).isEqualTo(2);
+    }
+
+    @Test
+    void delta_시간만_지나고_변경이_없으면_null() {
+        view.snapshot(List.of(pod("shop-api-5d8f-abcde", "Running", 10)));
+
+        // 다음 폴링에서 같은 파드를 다시 만들어도 시작 시각은 그대로
+        List<ServiceMetricDto> nextPoll = List.of(pod("shop-api-5d8f-abcde", "Running", 10));
+
+        assertThat(view.delta(nextPoll)).isNull();
+    }
+
+    @Test
+    void resend_마지막으로_보낸_상태와_seq를_다시_전송() {
+        view.snapshot(List.of(pod("shop-api-5d8f-abcde", "Running", 10)));
+        view.delta(List.of(pod("shop-api-5d8f-abcde", "Running", 20)));
+
+        DashboardSnapshotDto resent = view.resend();
+
+        assertThat(resent.getSeq()).isEqualTo(1);
+        assertThat(resent.getPods()).extracting(ServiceMetricDto::getCpuMillicores).containsExactly(20L);
+        // 다른 대시보드의 기준 상태는 그대로이므로 다음 delta는 seq 2
+        assertThat(view.delta(List.of(pod("shop-api-5d8f-abcde", "Running", 30))).getSeq()).isEqualTo(2);
+    }
+
+    @Test
+    void scheduleFlush_flush가_시작되기_전에는_한_번만_예약() {
+        assertThat(view.scheduleFlush()).isTrue();
+        assertThat(view.scheduleFlush()).isFalse();
+
+        view.flushStarted();
+
+        assertThat(view.scheduleFlush()).isTrue();
+    }
+
+    private static ServiceMetricDto pod(String podName, String status, long cpuMillicores) {
+        return ServiceMetricDto.builder()
+                .serviceName(podName.split("-")[1])
+                .podName(podName)
+                .status(status)
+                .cpuUsage(cpuMillicores + "m")
+                .memoryUsage("64Mi")
+                .cpuMillicores(cpuMillicores)
+                .memoryBytes(64L * 1024 * 1024)
+                .startedAt(STARTED_AT)
+                .restarts(0)
+                .build();
+    }
+}